@@ -0,0 +1,28 @@
+package manage.actuator;
+
+import manage.service.push.PushResilienceService;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * The circuit state, consecutive failures and latency per push target. Exposed in the push health group at
+ * /internal/health/push. A push target that is down does not make Manage unavailable, so the status is always up.
+ */
+@Component
+public class PushTargetsHealthIndicator implements HealthIndicator {
+
+    private final PushResilienceService pushResilienceService;
+
+    public PushTargetsHealthIndicator(PushResilienceService pushResilienceService) {
+        this.pushResilienceService = pushResilienceService;
+    }
+
+    @Override
+    public Health health() {
+        return Health.up()
+            .withDetail("anyOpen", pushResilienceService.anyOpen())
+            .withDetails(pushResilienceService.circuits())
+            .build();
+    }
+}
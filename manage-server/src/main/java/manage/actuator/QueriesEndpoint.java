@@ -0,0 +1,25 @@
+package manage.actuator;
+
+import manage.mongo.QueryProfiler;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Endpoint(id = "queries")
+public class QueriesEndpoint {
+
+    private final QueryProfiler queryProfiler;
+
+    public QueriesEndpoint(QueryProfiler queryProfiler) {
+        this.queryProfiler = queryProfiler;
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> queries() {
+        return queryProfiler.queries();
+    }
+}
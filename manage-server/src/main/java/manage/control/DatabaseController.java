@@ -1,12 +1,23 @@
 package manage.control;
 
+import manage.format.ConcatenatedList;
 import manage.format.EngineBlockFormatter;
 import manage.model.EntityType;
 import manage.model.MetaData;
 import manage.model.PushOptions;
+import manage.model.PushWatermark;
 import manage.model.Scope;
 import manage.policies.PdpPolicyDefinition;
 import manage.repository.MetaDataRepository;
+import manage.repository.PolicyEnforcementIndex;
+import manage.repository.PolicyEnforcementIndex.EnforcedProviders;
+import manage.service.push.ClusterPushService;
+import manage.service.push.EngineBlockConnectionCache;
+import manage.service.push.PushDiffService;
+import manage.service.push.PushProgress;
+import manage.service.push.PushResilienceService;
+import manage.service.push.PushDigestService;
+import manage.service.push.PushWatermarkService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,26 +26,47 @@ import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 import org.springframework.core.io.Resource;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.StreamingHttpOutputMessage;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
+import tools.jackson.core.JsonGenerator;
 import tools.jackson.core.type.TypeReference;
 import tools.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -50,9 +82,34 @@ public class DatabaseController {
 
     private static final int BATCH_SIZE = 500;
 
+    private static final int FORMAT_BATCH_SIZE = 50;
+
+    private static final int FORMAT_PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    //The fields read by the EngineBlockFormatter and the EngineBlockConnectionCache
+    private static final String[] PUSH_FIELDS = {"version", "type", "data.entityid", "data.state", "data.manipulation",
+        "data.arp", "data.allowedall", "data.allowedEntities", "data.disableConsent", "data.stepupEntities",
+        "data.mfaEntities", "data.metaDataFields"};
+
+    private static final String EB_TARGET = "eb";
+
+    private static final List<String> PUSH_TARGETS = List.of("pdp", "eb", "oidc", "stepup");
+
     private final RestTemplate restTemplate;
     private final String pushUri;
 
+    private final boolean ebDeltaEnabled;
+    private final String ebDeltaPushUri;
+    private final Duration ebFullPushInterval;
+    private final PushWatermarkService pushWatermarkService;
+    private final EngineBlockConnectionCache engineBlockConnectionCache;
+    private final PushDigestService pushDigestService;
+    private final ClusterPushService clusterPushService;
+    private final PolicyEnforcementIndex policyEnforcementIndex;
+    private final PushDiffService pushDiffService;
+    private final PushResilienceService pushResilienceService;
+    private final boolean skipUnchanged;
+
     private final RestTemplate oidcRestTemplate;
     private final String oidcPushUri;
     private final boolean oidcEnabled;
@@ -73,57 +130,101 @@ public class DatabaseController {
     private final RestTemplate pdpRestTemplate;
     private final boolean pdpEnabled;
     private final String sramEntityID;
+    private final ObjectMapper objectMapper;
 
     @Autowired
     DatabaseController(MetaDataRepository metaDataRepository,
+                       PushWatermarkService pushWatermarkService,
+                       EngineBlockConnectionCache engineBlockConnectionCache,
+                       PushDigestService pushDigestService,
+                       ClusterPushService clusterPushService,
+                       PolicyEnforcementIndex policyEnforcementIndex,
+                       PushDiffService pushDiffService,
+                       PushResilienceService pushResilienceService,
                        @Value("${push.eb.url}") String pushUri,
                        @Value("${push.eb.user}") String user,
                        @Value("${push.eb.password}") String password,
                        @Value("${push.eb.exclude_edugain_imports}") boolean excludeEduGainImported,
                        @Value("${push.eb.exclude_oidc_rp}") boolean excludeOidcRP,
                        @Value("${push.eb.exclude_sram}") boolean excludeSRAM,
+                       @Value("${push.eb.gzip}") boolean ebGzip,
+                       @Value("${push.eb.delta.enabled}") boolean ebDeltaEnabled,
+                       @Value("${push.eb.delta.url}") String ebDeltaPushUri,
+                       @Value("${push.eb.delta.full_push_interval_minutes}") long ebFullPushIntervalMinutes,
+                       @Value("${push.skip_unchanged}") boolean skipUnchanged,
                        @Value("${push.oidc.url}") String oidcPushUri,
                        @Value("${push.oidc.user}") String oidcUser,
                        @Value("${push.oidc.password}") String oidcPassword,
                        @Value("${push.oidc.enabled}") boolean oidcEnabled,
+                       @Value("${push.oidc.gzip}") boolean oidcGzip,
                        @Value("${push.pdp.user}") String pdpUser,
                        @Value("${push.pdp.password}") String pdpPassword,
                        @Value("${push.pdp.url}") String pdpPushUri,
                        @Value("${push.pdp.enabled}") boolean pdpEnabled,
+                       @Value("${push.pdp.gzip}") boolean pdpGzip,
                        @Value("${push.stepup.enabled}") boolean stepUpEnabled,
                        @Value("${push.stepup.url}") String stepUpPushUri,
                        @Value("${push.stepup.user}") String stepUpUser,
                        @Value("${push.stepup.password}") String stepUpPassword,
                        @Value("${push.stepup.configuration_file}") Resource stepupConfigurationResource,
+                       @Value("${push.http.max_connections}") int maxConnections,
+                       @Value("${push.http.max_connections_per_route}") int maxConnectionsPerRoute,
+                       @Value("${push.http.keep_alive_seconds}") long keepAliveSeconds,
+                       @Value("${push.http.connect_timeout_millis}") long connectTimeoutMillis,
+                       @Value("${push.http.response_timeout_seconds}") long responseTimeoutSeconds,
                        @Value("${sram.sram_rp_entity_id}") String sramEntityID,
                        ObjectMapper objectMapper,
                        Environment environment) throws IOException {
         this.metaDataRepository = metaDataRepository;
         this.pushUri = pushUri;
+        HttpClientSettings httpClientSettings =
+            new HttpClientSettings(false, maxConnections, maxConnectionsPerRoute, keepAliveSeconds,
+                connectTimeoutMillis, responseTimeoutSeconds);
 
-        this.restTemplate = RestTemplateIdiom.buildRestTemplate(pushUri, user, password);
+        this.restTemplate = RestTemplateIdiom.buildStreamingRestTemplate(pushUri, user, password,
+            httpClientSettings.withGzip(ebGzip));
         this.excludeEduGainImported = excludeEduGainImported;
         this.excludeOidcRP = excludeOidcRP;
         this.excludeSRAM = excludeSRAM;
 
-        this.oidcRestTemplate = RestTemplateIdiom.buildRestTemplate(oidcPushUri, oidcUser, oidcPassword);
+        this.ebDeltaEnabled = ebDeltaEnabled;
+        this.ebDeltaPushUri = ebDeltaPushUri;
+        this.ebFullPushInterval = Duration.ofMinutes(ebFullPushIntervalMinutes);
+        this.pushWatermarkService = pushWatermarkService;
+        this.engineBlockConnectionCache = engineBlockConnectionCache;
+        this.pushDigestService = pushDigestService;
+        this.clusterPushService = clusterPushService;
+        this.policyEnforcementIndex = policyEnforcementIndex;
+        this.pushDiffService = pushDiffService;
+        this.pushResilienceService = pushResilienceService;
+        this.skipUnchanged = skipUnchanged;
+
+        this.oidcRestTemplate = RestTemplateIdiom.buildRestTemplate(oidcPushUri, oidcUser, oidcPassword,
+            httpClientSettings.withGzip(oidcGzip));
         this.oidcPushUri = oidcPushUri;
         this.oidcEnabled = oidcEnabled;
 
-        this.pdpRestTemplate = RestTemplateIdiom.buildRestTemplate(pdpPushUri, pdpUser, pdpPassword);
+        this.pdpRestTemplate = RestTemplateIdiom.buildRestTemplate(pdpPushUri, pdpUser, pdpPassword,
+            httpClientSettings.withGzip(pdpGzip));
         this.pdpPushUri = pdpPushUri;
         this.pdpEnabled = pdpEnabled;
 
-        this.stepUpRestTemplate = RestTemplateIdiom.buildRestTemplate(stepUpPushUri, stepUpUser, stepUpPassword);
+        this.stepUpRestTemplate = RestTemplateIdiom.buildRestTemplate(stepUpPushUri, stepUpUser, stepUpPassword,
+            httpClientSettings);
         this.stepUpPushUri = stepUpPushUri;
         this.stepUpEnabled = stepUpEnabled;
         this.stepUpConfiguration = objectMapper.readValue(stepupConfigurationResource.getInputStream(), new TypeReference<>() {
         });
         this.sramEntityID = sramEntityID;
+        this.objectMapper = objectMapper;
         this.environment = environment;
     }
 
     public ResponseEntity<Map> doPush(PushOptions pushOptions) {
+        return doPush(pushOptions, PushProgress.NONE);
+    }
+
+    public ResponseEntity<Map> doPush(PushOptions pushOptions, PushProgress progress) {
 
         LOG.debug("Pushing with options {} and environment {}", pushOptions, environment.getActiveProfiles());
 
@@ -136,113 +237,229 @@ public class DatabaseController {
                 "stepup", Map.of("status", "OK")
             ), HttpStatus.OK);
         }
-        Map<String, Object> result = new HashMap<>();
-        List<PdpPolicyDefinition> policies = pushPreviewPdP();
-        if (pushOptions.isIncludePdP() && pdpEnabled) {
-            try {
-                this.pdpRestTemplate.put(pdpPushUri, policies);
-                result.put("pdp", Map.of("status", "OK"));
-            } catch (HttpStatusCodeException e) {
-                String message = String.format("Error in push to PDP (%s) status %s and response %s",
-                    pdpPushUri, e.getStatusCode(), e.getResponseBodyAsString());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
-            } catch (Exception e) {
-                String message = String.format("Error in push to PDP (%s) error %s",
-                    pdpPushUri, e.getMessage());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
+        return clusterPushService.singleFlight(pushOptions, options -> pushTargets(options, progress));
+    }
+
+    private ResponseEntity<Map> pushTargets(PushOptions pushOptions, PushProgress progress) {
+        Map<String, Future<Map<String, Object>>> pushes = new HashMap<>();
+        //The targets are independent of each other, we only wait for all pushes to be done
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (pushOptions.isIncludePdP() && pdpEnabled) {
+                pushes.put("pdp", executor.submit(() ->
+                    push("pdp", "PDP", pdpPushUri, () -> pushPdP(pushPreviewPdP()), progress)));
             }
-        } else {
-            result.put("pdp", Map.of("status", "OK"));
-        }
-        if (pushOptions.isIncludeEB()) {
-            Map<String, Map<String, Map<String, Object>>> json = this.doEBPushPreview(policies);
-
-            try {
-                ResponseEntity<String> response = this.restTemplate.postForEntity(pushUri, json, String.class);
-
-                String body = response.getBody();
-                result.put("eb", Map.of(
-                    "status", response.getStatusCode().is2xxSuccessful() ? "OK" : "ERROR",
-                    "response", StringUtils.hasText(body) ? body : ""));
-            } catch (HttpStatusCodeException e) {
-                String message = String.format("Error in push to EngineBlock (%s) status %s and response %s",
-                    pushUri, e.getStatusCode(), e.getResponseBodyAsString());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
-            } catch (Exception e) {
-                String message = String.format("Error in push to EngineBlock (%s) error %s",
-                    pushUri, e.getMessage());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
+            if (pushOptions.isIncludeEB()) {
+                //Taken before the payload is collected, changes saved during the push are part of the next delta
+                Instant pushStarted = Instant.now();
+                Optional<Instant> deltaSince = ebDeltaSince();
+                String uri = deltaSince.isPresent() ? ebDeltaPushUri : pushUri;
+                pushes.put("eb", executor.submit(() ->
+                    push(EB_TARGET, "EngineBlock", uri, () -> pushEB(uri, pushStarted, deltaSince), progress)));
+            }
+            if (oidcEnabled && pushOptions.isIncludeOIDC()) {
+                pushes.put("oidc", executor.submit(() -> push("oidc", "OIDC", oidcPushUri, this::pushOIDC, progress)));
+            }
+            if (stepUpEnabled && pushOptions.isIncludeStepUp()) {
+                pushes.put("stepup", executor.submit(() ->
+                    push("stepup", "Stepup", stepUpPushUri, this::pushStepUp, progress)));
             }
-        } else {
-            result.put("eb", Map.of("status", "OK"));
         }
+        Map<String, Object> result = new HashMap<>();
+        PUSH_TARGETS.forEach(target -> result.put(target, pushes.containsKey(target) ?
+            pushes.get(target).resultNow() : Map.of("status", "OK")));
+        //Report the first error in the order the targets were pushed before they were pushed concurrently
+        Optional<Object> message = PUSH_TARGETS.stream()
+            .map(target -> ((Map<String, Object>) result.get(target)).get("message"))
+            .filter(Objects::nonNull)
+            .findFirst();
+        if (message.isPresent()) {
+            result.put("message", message.get());
+            return new ResponseEntity<>(result, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
 
-        // Now push all oidc_rp metadata to OIDC proxy
-        if (oidcEnabled && pushOptions.isIncludeOIDC()) {
-            List<MetaData> filteredEntities = pushPreviewOIDC();
-            try {
-                ResponseEntity<Void> response = this.oidcRestTemplate.postForEntity(oidcPushUri, filteredEntities, Void.class);
-                result.put("oidc", Map.of(
-                    "status", response.getStatusCode().is2xxSuccessful() ? "OK" : "ERROR"));
-            } catch (HttpStatusCodeException e) {
-                String message = String.format("Error in push to OIDC (%s) status %s and response %s",
-                    oidcPushUri, e.getStatusCode(), e.getResponseBodyAsString());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
-            } catch (Exception e) {
-                String message = String.format("Error in push to OIDC (%s) error %s",
-                    oidcPushUri, e.getMessage());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-        } else {
-            result.put("oidc", Map.of("status", "OK"));
+    /*
+     * Executes the push to one target and returns the status and duration. Errors are logged and returned in the
+     * result and never thrown, also an Error of the push, so every target has a result.
+     */
+    private Map<String, Object> push(String target,
+                                     String name,
+                                     String uri,
+                                     Callable<Map<String, Object>> push,
+                                     PushProgress progress) {
+        progress.update(target, Map.of("status", "RUNNING"));
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = new HashMap<>();
+        try {
+            result.putAll(push.call());
+        } catch (HttpStatusCodeException e) {
+            String message = String.format("Error in push to %s (%s) status %s and response %s",
+                name, uri, e.getStatusCode(), e.getResponseBodyAsString());
+            LOG.error(message);
+            result.put("status", "ERROR");
+            result.put("message", message);
+        } catch (Throwable e) {
+            String message = String.format("Error in push to %s (%s) error %s",
+                name, uri, e.getMessage());
+            LOG.error(message);
+            result.put("status", "ERROR");
+            result.put("message", message);
         }
+        long duration = System.currentTimeMillis() - start;
+        LOG.debug("Push to {} ({}) took {} ms", name, uri, duration);
+        result.put("duration", duration);
+        progress.update(target, result);
+        return result;
+    }
 
-        if (stepUpEnabled && pushOptions.isIncludeStepUp()) {
-            Map<String, Map<String, Object>> institutions = pushPreviewInstitution();
-            Map<String, Object> stepUpConfiguration = pushPreviewSFO();
-            Map<String, List<String>> stepUpWhiteList = pushPreviewStepup();
-            Map<String, Object> stepUpEndPoint = Map.of(
-                "/management/institution-configuration", institutions,
-                "/management/configuration", stepUpConfiguration,
-                "/management/whitelist/replace", stepUpWhiteList
-            );
-            try {
-                //The ordering matters
-                List<String> ordering = List.of(
-                    "/management/whitelist/replace",
-                    "/management/institution-configuration",
-                    "/management/configuration"
-                );
-                ordering.forEach(key -> {
-                    ResponseEntity<Map> response = this.stepUpRestTemplate.postForEntity(
-                        stepUpPushUri + key,
-                        stepUpEndPoint.get(key),
-                        Map.class);
-                    boolean successFul = response.getStatusCode().is2xxSuccessful();
-                    result.put("stepup", Map.of("status", successFul ? "OK" : "ERROR"));
+    private Map<String, Object> pushPdP(List<PdpPolicyDefinition> policies) {
+        String digest = skipUnchanged ? pushDigestService.digest(policies) : null;
+        if (skipPush("pdp", digest)) {
+            return Map.of("status", "OK", "skipped", true, "payloadSize", policies.size());
+        }
+        pushResilienceService.execute("pdp", () -> {
+            this.pdpRestTemplate.put(pdpPushUri, policies);
+            return null;
+        });
+        registerDigest("pdp", digest);
+        return Map.of("status", "OK", "skipped", false, "payloadSize", policies.size());
+    }
 
-                });
-            } catch (HttpStatusCodeException e) {
-                String message = String.format("Error in push to Stepup (%s) status %s and response %s",
-                    stepUpPushUri, e.getStatusCode(), e.getResponseBodyAsString());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
-            } catch (Exception e) {
-                String message = String.format("Error in push to Stepup (%s) error %s",
-                    stepUpPushUri, e.getMessage());
-                LOG.error(message);
-                return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
+    private Map<String, Object> pushEB(String uri,
+                                       Instant pushStarted,
+                                       Optional<Instant> deltaSince) {
+        String mode = deltaSince.isPresent() ? "delta" : "full";
+        EnforcedProviders enforcedProviders = policyEnforcementIndex.enforcedProviders();
+        Optional<Map<String, Object>> deltaPayload = deltaSince.map(since -> this.doEBDeltaPushPreview(enforcedProviders, since));
+        //Only the delta payload is digested, a full push is streamed and not read twice
+        String digest = skipUnchanged ? deltaPayload.map(pushDigestService::digest).orElse(null) : null;
+        if (deltaPayload.isPresent() ? skipPush(EB_TARGET, digest) : skipFullPush()) {
+            //EB has the same connections as after the last push. A skipped push is never registered as a full push.
+            pushWatermarkService.registerPush(EB_TARGET, pushStarted, false);
+            return Map.of("status", "OK", "mode", mode, "skipped", true);
+        }
+        //The full push is streamed to EB to prevent the whole payload in memory
+        PushDiffService.Recorder recorder = deltaPayload.isPresent() ? null : pushDiffService.recorder();
+        ResponseEntity<String> response = pushResilienceService.execute(EB_TARGET, () -> deltaPayload.isPresent()
+            ? this.restTemplate.postForEntity(uri, deltaPayload.get(), String.class)
+            : this.restTemplate.execute(uri, HttpMethod.POST,
+            request -> this.writeEBPush(request, enforcedProviders, recorder),
+            this.restTemplate.responseEntityExtractor(String.class)));
+
+        String body = response.getBody();
+        boolean successful = response.getStatusCode().is2xxSuccessful();
+        int payloadSize = deltaPayload
+            .map(payload -> ((Map<String, Object>) payload.get("connections")).size())
+            .orElseGet(() -> recorder.size());
+        if (successful) {
+            pushWatermarkService.registerPush(EB_TARGET, pushStarted, deltaSince.isEmpty());
+            //The digest of the last delta payload is cleared by a full push
+            registerDigest(EB_TARGET, digest);
+            registerPushedConnections(recorder, deltaPayload);
+        }
+        return Map.of(
+            "status", successful ? "OK" : "ERROR",
+            "mode", mode,
+            "skipped", false,
+            "payloadSize", payloadSize,
+            "response", StringUtils.hasText(body) ? body : "");
+    }
+
+    /*
+     * The pushed connections are only used to compute the push diff, which is no reason to fail the push
+     */
+    private void registerPushedConnections(PushDiffService.Recorder recorder, Optional<Map<String, Object>> deltaPayload) {
+        try {
+            if (deltaPayload.isPresent()) {
+                pushDiffService.registerDelta(
+                    (Map<String, Map<String, Object>>) deltaPayload.get().get("connections"),
+                    (Set<String>) deltaPayload.get().get("removed"));
+            } else {
+                recorder.save();
             }
-        } else {
-            result.put("stepup", Map.of("status", "OK"));
+        } catch (RuntimeException e) {
+            LOG.error("Error in saving the pushed connections, the push diff is not reliable until the next push", e);
         }
-        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    private Map<String, Object> pushOIDC() {
+        // Push all oidc_rp metadata to OIDC proxy
+        List<MetaData> filteredEntities = pushPreviewOIDC();
+        String digest = skipUnchanged ? pushDigestService.digest(filteredEntities) : null;
+        if (skipPush("oidc", digest)) {
+            return Map.of("status", "OK", "skipped", true, "payloadSize", filteredEntities.size());
+        }
+        ResponseEntity<Void> response = pushResilienceService.execute("oidc", () ->
+            this.oidcRestTemplate.postForEntity(oidcPushUri, filteredEntities, Void.class));
+        boolean successful = response.getStatusCode().is2xxSuccessful();
+        if (successful) {
+            registerDigest("oidc", digest);
+        }
+        return Map.of("status", successful ? "OK" : "ERROR", "skipped", false, "payloadSize", filteredEntities.size());
+    }
+
+    private boolean skipPush(String target, String digest) {
+        if (digest != null && pushDigestService.unchanged(target, digest)) {
+            LOG.info("Skipping push to {} as the payload is unchanged since the last push", target);
+            pushDigestService.registerSkip(target);
+            return true;
+        }
+        return false;
+    }
+
+    private void registerDigest(String target, String digest) {
+        pushDigestService.registerPush(target, digest);
+    }
+
+    /*
+     * With delta pushes enabled a full push is only done when it is due, to correct the state of EngineBlock, and it
+     * is never skipped. Otherwise the full push is skipped when no pushed entity and no policy is saved or deleted
+     * since the last successful push.
+     */
+    private boolean skipFullPush() {
+        if (!skipUnchanged || ebDeltaEnabled) {
+            return false;
+        }
+        boolean unchanged = pushWatermarkService.findWatermark(EB_TARGET)
+            .map(PushWatermark::getLastPush)
+            .filter(since -> Stream.concat(ebPushedEntityTypes().stream(), Stream.of(EntityType.PDP))
+                .noneMatch(entityType -> metaDataRepository.hasChangesSince(entityType.getType(), since)))
+            .isPresent();
+        if (unchanged) {
+            LOG.info("Skipping full push to {} as nothing is changed since the last push", EB_TARGET);
+            pushDigestService.registerSkip(EB_TARGET);
+        }
+        return unchanged;
+    }
+
+    private Map<String, Object> pushStepUp() {
+        Map<String, Map<String, Object>> institutions = pushPreviewInstitution();
+        Map<String, Object> stepUpConfiguration = pushPreviewSFO();
+        Map<String, List<String>> stepUpWhiteList = pushPreviewStepup();
+        Map<String, Object> stepUpEndPoint = Map.of(
+            "/management/institution-configuration", institutions,
+            "/management/configuration", stepUpConfiguration,
+            "/management/whitelist/replace", stepUpWhiteList
+        );
+        //The ordering matters, so these are pushed sequentially
+        List<String> ordering = List.of(
+            "/management/whitelist/replace",
+            "/management/institution-configuration",
+            "/management/configuration"
+        );
+        Map<String, Object> result = new HashMap<>();
+        ordering.forEach(key -> {
+            ResponseEntity<Map> response = pushResilienceService.execute("stepup", () ->
+                this.stepUpRestTemplate.postForEntity(
+                    stepUpPushUri + key,
+                    stepUpEndPoint.get(key),
+                    Map.class));
+            boolean successFul = response.getStatusCode().is2xxSuccessful();
+            result.put("status", successFul ? "OK" : "ERROR");
+        });
+        result.put("payloadSize", institutions.size());
+        return result;
     }
 
     private List<PdpPolicyDefinition> pushPreviewPdP() {
@@ -374,122 +591,139 @@ public class DatabaseController {
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/client/playground/pushPreview")
     public Map<String, Map<String, Map<String, Object>>> pushPreview() {
-        List<PdpPolicyDefinition> policies = pushPreviewPdP();
-        return doEBPushPreview(policies);
+        return doEBPushPreview(policyEnforcementIndex.enforcedProviders());
     }
 
-    private Map<String, Map<String, Map<String, Object>>> doEBPushPreview(List<PdpPolicyDefinition> policies) {
+    private Map<String, Map<String, Map<String, Object>>> doEBPushPreview(EnforcedProviders enforcedProviders) {
+        Map<String, Map<String, Object>> connections = new HashMap<>();
+        ebConnections(this::streamAllForPush, enforcedProviders, new HashSet<>(), connections::put);
+        engineBlockConnectionCache.retainAll(connections.keySet());
+        LOG.debug("EngineBlock connection cache after push preview: {}", engineBlockConnectionCache.stats());
 
-        EngineBlockFormatter formatter = new EngineBlockFormatter();
+        Map<String, Map<String, Map<String, Object>>> results = new HashMap<>();
+        results.put("connections", connections);
+        return results;
+    }
 
-        List<MetaData> serviceProviders = metaDataRepository.getMongoTemplate().stream(
-            new Query().cursorBatchSize(BATCH_SIZE),
-            MetaData.class,
-            EntityType.SP.getType()
-        ).toList();
+    /*
+     * Writes the same JSON as doEBPushPreview, but formats and writes the connections one by one while reading the
+     * Mongo cursors. Only the ids of the pushed connections are kept in memory.
+     */
+    private void writeEBPush(ClientHttpRequest request,
+                             EnforcedProviders enforcedProviders,
+                             PushDiffService.Recorder recorder) throws IOException {
+        if (request instanceof StreamingHttpOutputMessage streamingRequest) {
+            streamingRequest.setBody(outputStream -> writeEBConnections(outputStream, enforcedProviders, recorder));
+        } else {
+            writeEBConnections(request.getBody(), enforcedProviders, recorder);
+        }
+    }
 
-        Stream<MetaData> spStream = serviceProviders.parallelStream();
-        if (excludeEduGainImported) {
-            spStream = spStream.filter(metaData -> {
-                Map<String, Object> fields = metaData.metaDataFields();
-                boolean imported = Boolean.TRUE.equals(fields.get("coin:imported_from_edugain"));
-                boolean push = Boolean.TRUE.equals(fields.get("coin:push_enabled"));
-                return !imported || push;
+    private void writeEBConnections(OutputStream outputStream,
+                                    EnforcedProviders enforcedProviders,
+                                    PushDiffService.Recorder recorder) {
+        Set<String> ids = new HashSet<>();
+        try (JsonGenerator generator = objectMapper.createGenerator(StreamUtils.nonClosing(outputStream))) {
+            generator.writeStartObject();
+            generator.writeName("connections");
+            generator.writeStartObject();
+            ebConnections(this::streamAllForPush, enforcedProviders, new HashSet<>(), (id, connection) -> {
+                ids.add(id);
+                recorder.accept(id, connection);
+                generator.writeName(id);
+                generator.writePOJO(connection);
             });
+            generator.writeEndObject();
+            generator.writeEndObject();
         }
+        engineBlockConnectionCache.retainAll(ids);
+        LOG.debug("EngineBlock connection cache after streaming push: {}", engineBlockConnectionCache.stats());
+    }
 
-        Map<String, Map<String, Object>> serviceProvidersToPush =
-            spStream.filter(metaData -> !excludeFromPush(metaData.metaDataFields()))
-                .collect(Collectors.toConcurrentMap(
-                    MetaData::getId,
-                    formatter::parseServiceProvider
-                ));
-        List<MetaData> sramServices = new ArrayList<>();
-        if (!excludeSRAM) {
-            sramServices = metaDataRepository.getMongoTemplate().stream(
-                new Query().cursorBatchSize(BATCH_SIZE),
-                MetaData.class,
-                EntityType.SRAM.getType()
-            ).toList();
-
-            sramServices.forEach(sram -> sram.metaDataFields().put("coin:collab_enabled", true));
-
-            Map<String, Map<String, Object>> sramToPush =
-                sramServices.parallelStream()
-                    .collect(Collectors.toConcurrentMap(
-                        MetaData::getId,
-                        formatter::parseServiceProvider
-                    ));
-
-            serviceProvidersToPush.putAll(sramToPush);
-        }
+    /*
+     * Only the connections saved or deleted since the previous push. Connections that are no longer pushed - e.g.
+     * excluded from push after the last change - are reported as removed.
+     */
+    private Map<String, Object> doEBDeltaPushPreview(EnforcedProviders enforcedProviders, Instant since) {
+        Set<String> removed = new HashSet<>();
+        Map<String, Map<String, Object>> connections = new HashMap<>();
 
-        List<MetaData> identityProviders = metaDataRepository.getMongoTemplate().stream(
-            new Query().cursorBatchSize(BATCH_SIZE),
-            MetaData.class,
-            EntityType.IDP.getType()
-        ).toList();
+        ebConnections(
+            entityType -> metaDataRepository.changedSince(entityType.getType(), since, PUSH_FIELDS).stream(),
+            enforcedProviders,
+            removed,
+            connections::put);
 
-        filterOutNullDisableConsentExplanations(identityProviders);
+        ebPushedEntityTypes().forEach(entityType ->
+            removed.addAll(metaDataRepository.terminatedSince(entityType.getType(), since)));
+        removed.removeAll(connections.keySet());
 
-        if (!excludeSRAM) {
-            List<Map<String, String>> sramAllowedEntities = sramServices.stream()
-                .map(metaData -> Map.of("name", (String) metaData.getData().get("entityid"))).toList();
-            identityProviders.forEach(identityProvider -> {
-                Map<String, Object> identityProviderData = identityProvider.getData();
-                boolean allowedall = (boolean) identityProviderData.getOrDefault("allowedall", false);
-                if (!allowedall) {
-                    List<Map<String, String>> allowedEntities = (List<Map<String, String>>) identityProviderData
-                        .computeIfAbsent("allowedEntities", key -> new ArrayList<Map<String, String>>());
-                    if (allowedEntities.stream()
-                        .anyMatch(allowedEntity -> this.sramEntityID.equalsIgnoreCase(allowedEntity.get("name")))) {
-                        //now all sram services to the allowed list
-                        allowedEntities.addAll(sramAllowedEntities);
-                    }
-                }
-            });
+        Map<String, Object> results = new HashMap<>();
+        results.put("connections", connections);
+        results.put("removed", removed);
+        return results;
+    }
+
+    /*
+     * A delta push is only possible if there is a recent full push and no policies or SRAM services are changed, as
+     * these change the pushed data of connections that are not changed themselves.
+     */
+    private Optional<Instant> ebDeltaSince() {
+        if (!ebDeltaEnabled) {
+            return Optional.empty();
         }
+        Instant now = Instant.now();
+        return pushWatermarkService.findWatermark(EB_TARGET)
+            .filter(watermark -> watermark.getLastFullPush() != null &&
+                watermark.getLastFullPush().plus(ebFullPushInterval).isAfter(now))
+            .map(PushWatermark::getLastPush)
+            .filter(since -> Stream.of(EntityType.PDP, EntityType.SRAM)
+                .filter(entityType -> !excludeSRAM || !entityType.equals(EntityType.SRAM))
+                .noneMatch(entityType -> metaDataRepository.hasChangesSince(entityType.getType(), since)));
+    }
 
-        Map<String, Map<String, Object>> identityProvidersToPush =
-            identityProviders.parallelStream()
-                .filter(metaData -> !excludeFromPush(metaData.metaDataFields()))
-                .collect(Collectors.toConcurrentMap(
-                    MetaData::getId,
-                    formatter::parseIdentityProvider
-                ));
+    private List<EntityType> ebPushedEntityTypes() {
+        return Stream.of(EntityType.SP, EntityType.SRAM, EntityType.IDP, EntityType.RP)
+            .filter(entityType -> !excludeSRAM || !entityType.equals(EntityType.SRAM))
+            .filter(entityType -> !excludeOidcRP || !entityType.equals(EntityType.RP))
+            .toList();
+    }
 
-        if (!excludeOidcRP) {
-            List<MetaData> relyingParties = metaDataRepository.getMongoTemplate().stream(
-                new Query().cursorBatchSize(BATCH_SIZE),
-                MetaData.class,
-                EntityType.RP.getType()
-            ).toList();
-
-            Map<String, Map<String, Object>> oidcClientsToPush =
-                relyingParties.parallelStream()
-                    .filter(metaData -> !excludeFromPush(metaData.metaDataFields()))
-                    .collect(Collectors.toConcurrentMap(
-                        MetaData::getId,
-                        formatter::parseOidcClient
-                    ));
-
-            serviceProvidersToPush.putAll(oidcClientsToPush);
-        }
+    private Stream<MetaData> streamAllForPush(EntityType entityType) {
+        Query query = new Query().cursorBatchSize(BATCH_SIZE);
+        query.fields().include(PUSH_FIELDS);
+        return metaDataRepository.getMongoTemplate().stream(
+            query,
+            MetaData.class,
+            entityType.getType()
+        );
+    }
 
-        // Add IdPs to the same map, as EB looks at the type: saml20-sp or saml20-idp
-        serviceProvidersToPush.putAll(identityProvidersToPush);
+    /*
+     * Formats the connections of the source one by one and hands them to the consumer. The source streams are closed
+     * after the entity type is processed, so Mongo cursors are never left open.
+     */
+    private void ebConnections(Function<EntityType, Stream<MetaData>> source,
+                               EnforcedProviders enforcedProviders,
+                               Set<String> excludedIds,
+                               BiConsumer<String, Map<String, Object>> consumer) {
+        EngineBlockFormatter formatter = new EngineBlockFormatter();
 
-        Set<String> allServiceProviderIds = policies.parallelStream()
-            .filter(p -> p.isActive() && !p.isIdpPolicy())
-            .flatMap(p -> p.getServiceProviderIds().stream())
-            .collect(Collectors.toSet());
+        Predicate<MetaData> include = metaData -> !excludeFromPush(metaData.metaDataFields());
+        Predicate<MetaData> includeServiceProvider = include;
+        if (excludeEduGainImported) {
+            includeServiceProvider = includeServiceProvider.and(metaData -> {
+                Map<String, Object> fields = metaData.metaDataFields();
+                boolean imported = Boolean.TRUE.equals(fields.get("coin:imported_from_edugain"));
+                boolean push = Boolean.TRUE.equals(fields.get("coin:push_enabled"));
+                return !imported || push;
+            });
+        }
 
-        Set<String> allIdentityProviderIds = policies.parallelStream()
-            .filter(p -> p.isActive() && p.isIdpPolicy())
-            .flatMap(p -> p.getIdentityProviderIds().stream())
-            .collect(Collectors.toSet());
+        Set<String> allServiceProviderIds = enforcedProviders.serviceProviderIds();
+        Set<String> allIdentityProviderIds = enforcedProviders.identityProviderIds();
 
-        serviceProvidersToPush.values().parallelStream().forEach(provider -> {
+        BiConsumer<String, Map<String, Object>> policyEnforcement = (id, provider) -> {
             String type = (String) provider.get("type");
             Map<String, Object> metadata = (Map<String, Object>) provider.computeIfAbsent("metadata", k -> new HashMap<>());
             Map<String, Object> coin = (Map<String, Object>) metadata.computeIfAbsent("coin", k -> new HashMap<>());
@@ -504,11 +738,116 @@ public class DatabaseController {
             } else {
                 coin.remove("policy_enforcement_decision_required");
             }
+            consumer.accept(id, provider);
+        };
+
+        format(source.apply(EntityType.SP), includeServiceProvider, formatter::parseServiceProvider,
+            excludedIds, policyEnforcement);
+
+        if (!excludeSRAM) {
+            format(source.apply(EntityType.SRAM), metaData -> true, metaData -> {
+                metaData.metaDataFields().put("coin:collab_enabled", true);
+                return formatter.parseServiceProvider(metaData);
+            }, excludedIds, policyEnforcement);
+        }
+
+        // EB looks at the type of the connection: saml20-sp or saml20-idp
+        BiConsumer<String, Map<String, Object>> identityProviderConsumer = policyEnforcement;
+        if (!excludeSRAM) {
+            // The formatted IdPs are cached and do not depend on the SRAM services, so we expand afterwards
+            List<Map<String, String>> sramAllowedEntities = metaDataRepository.entityIds(EntityType.SRAM.getType())
+                .stream()
+                .map(entityId -> Map.of("name", entityId))
+                .toList();
+            identityProviderConsumer = (id, identityProvider) -> {
+                boolean allowedall = Boolean.TRUE.equals(identityProvider.get("allow_all_entities"));
+                List<Map<String, String>> allowedEntities =
+                    (List<Map<String, String>>) identityProvider.get("allowed_connections");
+                if (!allowedall && allowedEntities != null && allowedEntities.stream()
+                    .anyMatch(allowedEntity -> this.sramEntityID.equalsIgnoreCase(allowedEntity.get("name")))) {
+                    //now all sram services to the allowed list, the SRAM services are shared between all IdPs
+                    identityProvider.put("allowed_connections", new ConcatenatedList<>(allowedEntities, sramAllowedEntities));
+                }
+                policyEnforcement.accept(id, identityProvider);
+            };
+        }
+        format(source.apply(EntityType.IDP), include, metaData -> {
+            filterOutNullDisableConsentExplanations(List.of(metaData));
+            return formatter.parseIdentityProvider(metaData);
+        }, excludedIds, identityProviderConsumer);
+
+        if (!excludeOidcRP) {
+            format(source.apply(EntityType.RP), include, formatter::parseOidcClient, excludedIds, policyEnforcement);
+        }
+    }
+
+    /*
+     * The connections are formatted in batches on worker threads while the next batch is read from the cursor. At
+     * most FORMAT_PARALLELISM batches are in flight, reading the cursor waits for the oldest batch. The consumer is
+     * only called from the calling thread and in the order of the cursor.
+     */
+    private void format(Stream<MetaData> metaDataStream,
+                        Predicate<MetaData> include,
+                        Function<MetaData, Map<String, Object>> formatter,
+                        Set<String> excludedIds,
+                        BiConsumer<String, Map<String, Object>> consumer) {
+        Deque<Future<List<FormattedConnection>>> batches = new ArrayDeque<>();
+        try (metaDataStream; ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Iterator<MetaData> iterator = metaDataStream.iterator();
+            while (iterator.hasNext()) {
+                List<MetaData> batch = new ArrayList<>(FORMAT_BATCH_SIZE);
+                while (iterator.hasNext() && batch.size() < FORMAT_BATCH_SIZE) {
+                    batch.add(iterator.next());
+                }
+                batches.add(executor.submit(() -> batch.stream()
+                    .map(metaData -> include.test(metaData) ?
+                        new FormattedConnection(metaData.getId(), engineBlockConnectionCache.connection(metaData, formatter)) :
+                        new FormattedConnection(metaData.getId(), null))
+                    .toList()));
+                if (batches.size() >= FORMAT_PARALLELISM) {
+                    accept(batches.poll(), excludedIds, consumer);
+                }
+            }
+            while (!batches.isEmpty()) {
+                accept(batches.poll(), excludedIds, consumer);
+            }
+        }
+    }
+
+    private void accept(Future<List<FormattedConnection>> batch,
+                        Set<String> excludedIds,
+                        BiConsumer<String, Map<String, Object>> consumer) {
+        List<FormattedConnection> connections;
+        try {
+            connections = batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtimeException ?
+                runtimeException : new IllegalStateException(e.getCause());
+        }
+        connections.forEach(formattedConnection -> {
+            if (formattedConnection.connection() == null) {
+                excludedIds.add(formattedConnection.id());
+            } else {
+                consumer.accept(formattedConnection.id(), formattedConnection.connection());
+            }
         });
+    }
 
-        Map<String, Map<String, Map<String, Object>>> results = new HashMap<>();
-        results.put("connections", serviceProvidersToPush);
-        return results;
+    private record FormattedConnection(String id, Map<String, Object> connection) {
+    }
+
+    /*
+     * The connections that would be pushed to EngineBlock compared with the connections of the last successful push
+     */
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/client/playground/pushDiff")
+    public Map<String, Object> pushDiff() {
+        PushDiffService.Diff diff = pushDiffService.diff();
+        ebConnections(this::streamAllForPush, policyEnforcementIndex.enforcedProviders(), new HashSet<>(), diff::accept);
+        return diff.result();
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -0,0 +1,20 @@
+package manage.control;
+
+/**
+ * Settings of the HttpClient behind a RestTemplate. If gzip is enabled, request bodies are compressed and sent with
+ * Content-Encoding gzip. A timeout of zero leaves the default of the HttpClient in place.
+ */
+public record HttpClientSettings(boolean gzip,
+                                 int maxConnections,
+                                 int maxConnectionsPerRoute,
+                                 long keepAliveSeconds,
+                                 long connectTimeoutMillis,
+                                 long responseTimeoutSeconds) {
+
+    public static final HttpClientSettings DEFAULT = new HttpClientSettings(false, 25, 5, 180, 0, 0);
+
+    public HttpClientSettings withGzip(boolean gzip) {
+        return new HttpClientSettings(gzip, maxConnections, maxConnectionsPerRoute, keepAliveSeconds,
+            connectTimeoutMillis, responseTimeoutSeconds);
+    }
+}
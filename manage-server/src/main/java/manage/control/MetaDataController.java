@@ -13,21 +13,23 @@ import manage.model.MetaDataKeyDelete;
 import manage.model.MetaDataUpdate;
 import manage.model.PushOptions;
 import manage.model.RevisionRestore;
+import manage.model.SearchPage;
+import manage.model.SearchPagination;
 import manage.model.StatsEntry;
 import manage.model.XML;
 import manage.repository.MetaDataRepository;
 import manage.service.ExporterService;
 import manage.service.ImporterService;
 import manage.service.MetaDataService;
+import manage.service.StatsService;
 import manage.shibboleth.FederatedUser;
 import manage.web.ScopeEnforcer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
@@ -41,12 +43,15 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -64,6 +69,12 @@ public class MetaDataController {
 
     private static final Logger LOG = LoggerFactory.getLogger(MetaDataController.class);
 
+    public static final String CONTINUATION_TOKEN_HEADER = "X-Continuation-Token";
+
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    private static final int NDJSON_FLUSH_INTERVAL = 100;
+
     private final MetaDataRepository metaDataRepository;
 
     private final MetaDataAutoConfiguration metaDataAutoConfiguration;
@@ -76,12 +87,18 @@ public class MetaDataController {
 
     private final DatabaseController databaseController;
 
+    private final ObjectMapper objectMapper;
+
+    private final StatsService statsService;
+
     public MetaDataController(MetaDataRepository metaDataRepository,
                               MetaDataAutoConfiguration metaDataAutoConfiguration,
                               ExporterService exporterService,
                               ImporterService importerService,
                               MetaDataService metaDataService,
-                              DatabaseController databaseController) {
+                              DatabaseController databaseController,
+                              ObjectMapper objectMapper,
+                              StatsService statsService) {
 
         this.metaDataRepository = metaDataRepository;
         this.metaDataAutoConfiguration = metaDataAutoConfiguration;
@@ -89,6 +106,8 @@ public class MetaDataController {
         this.importerService = importerService;
         this.metaDataService = metaDataService;
         this.databaseController = databaseController;
+        this.objectMapper = objectMapper;
+        this.statsService = statsService;
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -135,7 +154,13 @@ public class MetaDataController {
     @GetMapping("/client/metadata/stats")
     public List<StatsEntry> stats(FederatedUser user) {
 
-        return metaDataRepository.stats();
+        return statsService.collectionStats();
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/client/metadata/stats/breakdown")
+    public Map<String, Map<String, Object>> statsBreakdown() {
+        return statsService.breakdown();
     }
 
     @PreAuthorize("hasAnyRole('WRITE_SP', 'WRITE_IDP', 'SYSTEM', 'POLICIES')")
@@ -362,7 +387,7 @@ public class MetaDataController {
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("client/change-requests/count")
     public long openChangeRequests() {
-        return metaDataRepository.openChangeRequests();
+        return statsService.openChangeRequests();
     }
 
 
@@ -505,6 +530,12 @@ public class MetaDataController {
         return metaDataRepository.retrieveAllEntities();
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(value = {"/client/metadata/allentities"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllEntities() {
+        return ndjson(metaDataRepository.streamAllEntities());
+    }
+
     @PreAuthorize("hasAnyRole('ADMIN', 'READ')")
     @GetMapping({"/client/allowedEntities/{type}/{id}", "/internal/allowedEntities/{type}/{id}"})
     public List<Map> allowedEntities(@PathVariable("type") String type, @PathVariable("id") String id) {
@@ -536,25 +567,100 @@ public class MetaDataController {
 
     @PreAuthorize("hasAnyRole('ADMIN', 'READ')")
     @PostMapping({"/client/search/{type}", "/internal/search/{type}"})
-    public List<Map> searchEntities(@PathVariable("type") String type,
-                                    @RequestBody Map<String, Object> properties,
-                                    @RequestParam(required = false, defaultValue = "false") boolean nested) {
-
-        return metaDataService.searchEntityByType(type, properties, nested);
+    public ResponseEntity<List<Map>> searchEntities(@PathVariable("type") String type,
+                                                    @RequestBody Map<String, Object> properties,
+                                                    @RequestParam(required = false, defaultValue = "false") boolean nested,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    @RequestParam(required = false) String continuationToken,
+                                                    @RequestParam(required = false) String sort,
+                                                    @RequestParam(required = false, defaultValue = "false") boolean count) {
+        SearchPagination pagination = new SearchPagination(limit, continuationToken, sort, count);
+        return searchPage(metaDataService.searchEntityByType(type, properties, nested, pagination));
     }
 
     @PreAuthorize("hasAnyRole('ADMIN', 'READ')")
     @GetMapping({"/client/rawSearch/{type}", "/internal/rawSearch/{type}"})
-    public List<MetaData> rawSearch(@PathVariable("type") String type, @RequestParam("query") String query)
+    public ResponseEntity<List<MetaData>> rawSearch(@PathVariable("type") String type,
+                                                    @RequestParam("query") String query,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    @RequestParam(required = false) String continuationToken,
+                                                    @RequestParam(required = false) String sort,
+                                                    @RequestParam(required = false, defaultValue = "false") boolean count)
         throws UnsupportedEncodingException {
-        return metaDataService.retrieveRawSearch(type, query);
+        SearchPagination pagination = new SearchPagination(limit, continuationToken, sort, count);
+        return searchPage(metaDataService.retrieveRawSearch(type, query, pagination));
     }
 
     @PreAuthorize("hasAnyRole('ADMIN', 'READ')")
     @PostMapping({"/client/rawSearch/{type}", "/internal/rawSearch/{type}"})
-    public List<MetaData> rawSearchPost(@PathVariable("type") String type, @RequestBody String query)
+    public ResponseEntity<List<MetaData>> rawSearchPost(@PathVariable("type") String type,
+                                                        @RequestBody String query,
+                                                        @RequestParam(required = false) Integer limit,
+                                                        @RequestParam(required = false) String continuationToken,
+                                                        @RequestParam(required = false) String sort,
+                                                        @RequestParam(required = false, defaultValue = "false") boolean count)
         throws UnsupportedEncodingException {
-        return metaDataService.retrieveRawSearch(type, query);
+        SearchPagination pagination = new SearchPagination(limit, continuationToken, sort, count);
+        return searchPage(metaDataService.retrieveRawSearch(type, query, pagination));
+    }
+
+    @PreAuthorize("hasAnyRole('ADMIN', 'READ')")
+    @PostMapping(value = {"/client/search/{type}", "/internal/search/{type}"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamEntities(@PathVariable("type") String type,
+                                                                @RequestBody Map<String, Object> properties,
+                                                                @RequestParam(required = false, defaultValue = "false") boolean nested) {
+        return ndjson(metaDataService.streamEntitiesByType(type, properties, nested));
+    }
+
+    @PreAuthorize("hasAnyRole('ADMIN', 'READ')")
+    @GetMapping(value = {"/client/rawSearch/{type}", "/internal/rawSearch/{type}"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamRawSearch(@PathVariable("type") String type,
+                                                                 @RequestParam("query") String query)
+        throws UnsupportedEncodingException {
+        return ndjson(metaDataService.streamRawSearch(type, query));
+    }
+
+    @PreAuthorize("hasAnyRole('ADMIN', 'READ')")
+    @PostMapping(value = {"/client/rawSearch/{type}", "/internal/rawSearch/{type}"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamRawSearchPost(@PathVariable("type") String type,
+                                                                     @RequestBody String query)
+        throws UnsupportedEncodingException {
+        return ndjson(metaDataService.streamRawSearch(type, query));
+    }
+
+    /*
+     * The cursor is opened before the response is committed, so an invalid query still results in an error status.
+     * The documents are written one per line while reading the cursor, with a flush every NDJSON_FLUSH_INTERVAL lines.
+     */
+    private <T> ResponseEntity<StreamingResponseBody> ndjson(Stream<T> documents) {
+        StreamingResponseBody body = outputStream -> {
+            try (documents) {
+                int lines = 0;
+                for (Iterator<T> iterator = documents.iterator(); iterator.hasNext(); ) {
+                    outputStream.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    outputStream.write('\n');
+                    if (++lines % NDJSON_FLUSH_INTERVAL == 0) {
+                        outputStream.flush();
+                    }
+                }
+                outputStream.flush();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /*
+     * The body remains the list of results for backward compatibility, the pagination is returned in headers
+     */
+    private <T> ResponseEntity<List<T>> searchPage(SearchPage<T> searchPage) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (searchPage.continuationToken() != null) {
+            builder.header(CONTINUATION_TOKEN_HEADER, searchPage.continuationToken());
+        }
+        if (searchPage.totalCount() != null) {
+            builder.header(TOTAL_COUNT_HEADER, String.valueOf(searchPage.totalCount()));
+        }
+        return builder.body(searchPage.results());
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -585,10 +691,13 @@ public class MetaDataController {
     @PreAuthorize("hasRole('READ')")
     @GetMapping("/internal/stats")
     public Map<String, Long> stats() {
-        MongoTemplate mongoTemplate = metaDataRepository.getMongoTemplate();
-        return Stream.of(EntityType.SP, EntityType.IDP, EntityType.RP)
-            .collect(Collectors.toMap(entityType -> entityType.getType(), entityType ->
-                mongoTemplate.count(new Query(), entityType.getType())));
+        return statsService.entityCounts(List.of(EntityType.SP, EntityType.IDP, EntityType.RP));
+    }
+
+    @PreAuthorize("hasRole('READ')")
+    @GetMapping("/internal/stats/breakdown")
+    public Map<String, Map<String, Object>> internalStatsBreakdown() {
+        return statsService.breakdown();
     }
 
     @PreAuthorize("hasRole('READ')")
@@ -2,11 +2,18 @@ package manage.control;
 
 import lombok.SneakyThrows;
 import manage.web.HttpHostProvider;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.GzipCompressingEntity;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.impl.routing.DefaultProxyRoutePlanner;
+import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.boot.restclient.RestTemplateBuilder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRequest;
@@ -29,12 +36,74 @@ public class RestTemplateIdiom {
     private RestTemplateIdiom() {
     }
 
-    @SneakyThrows
     public static RestTemplate buildRestTemplate(String uri, String userName, String password) {
+        return buildRestTemplate(uri, userName, password, HttpClientSettings.DEFAULT);
+    }
+
+    public static RestTemplate buildRestTemplate(String uri, String userName, String password, HttpClientSettings settings) {
+        HttpComponentsClientHttpRequestFactory requestFactory = requestFactory(uri, settings);
+
+        RestTemplateBuilder builder = new RestTemplateBuilder();
+        return builder
+            .requestFactory(() -> requestFactory)
+            .additionalInterceptors(List.of(
+                new BasicAuthenticationInterceptor(userName, password),
+                new JSONHeaderInterceptor(),
+                new CookieRemoveInterceptor()))
+            .build();
+    }
+
+    /*
+     * Interceptors require the request body as byte array and therefore buffer the complete request. This RestTemplate
+     * sets the authentication and JSON headers on request initialization and streams the body to the server.
+     */
+    public static RestTemplate buildStreamingRestTemplate(String uri, String userName, String password, HttpClientSettings settings) {
+        HttpComponentsClientHttpRequestFactory requestFactory = requestFactory(uri, settings);
+
+        RestTemplateBuilder builder = new RestTemplateBuilder();
+        return builder
+            .requestFactory(() -> requestFactory)
+            .basicAuthentication(userName, password)
+            .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+            .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .build();
+    }
 
+    @SneakyThrows
+    private static HttpComponentsClientHttpRequestFactory requestFactory(String uri, HttpClientSettings settings) {
+        PoolingHttpClientConnectionManagerBuilder connectionManagerBuilder = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(settings.maxConnections())
+            .setMaxConnPerRoute(settings.maxConnectionsPerRoute());
+        if (settings.connectTimeoutMillis() > 0) {
+            connectionManagerBuilder.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(settings.connectTimeoutMillis()))
+                .build());
+        }
+        PoolingHttpClientConnectionManager connectionManager = connectionManagerBuilder.build();
+        TimeValue keepAlive = TimeValue.ofSeconds(settings.keepAliveSeconds());
         HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
-            .setConnectionManager(new PoolingHttpClientConnectionManager())
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy((response, context) -> keepAlive)
+            .evictIdleConnections(keepAlive)
             .disableCookieManagement();
+        if (settings.responseTimeoutSeconds() > 0) {
+            // The maximum time between two packets of the response, so a slow target fails instead of blocking the push
+            httpClientBuilder.setDefaultRequestConfig(RequestConfig.custom()
+                .setResponseTimeout(Timeout.ofSeconds(settings.responseTimeoutSeconds()))
+                .build());
+        }
+
+        if (settings.gzip()) {
+            // Wraps the request entity, which is either the buffered body of the interceptors or the streamed body
+            httpClientBuilder.addExecInterceptorFirst("gzip", (request, scope, chain) -> {
+                HttpEntity entity = request.getEntity();
+                if (entity != null) {
+                    request.setEntity(new GzipCompressingEntity(entity));
+                    request.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                }
+                return chain.proceed(request, scope);
+            });
+        }
 
         if (StringUtils.hasText(uri)) {
             if (uri.endsWith("/")) {
@@ -46,17 +115,7 @@ public class RestTemplateIdiom {
 
         CloseableHttpClient httpClient = httpClientBuilder.build();
 
-        HttpComponentsClientHttpRequestFactory requestFactory =
-            new HttpComponentsClientHttpRequestFactory(httpClient);
-
-        RestTemplateBuilder builder = new RestTemplateBuilder();
-        return builder
-            .requestFactory(() -> requestFactory)
-            .additionalInterceptors(List.of(
-                new BasicAuthenticationInterceptor(userName, password),
-                new JSONHeaderInterceptor(),
-                new CookieRemoveInterceptor()))
-            .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
     }
 
     private static class JSONHeaderInterceptor implements ClientHttpRequestInterceptor {
@@ -7,7 +7,6 @@ import manage.repository.MetaDataRepository;
 import manage.service.MetaDataService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
@@ -42,7 +41,7 @@ public class StepUpImportController {
                                                                        APIUser apiUser) {
         LOG.info("importStepUpServiceProviders called by {}", apiUser.getName());
 
-        metaDataRepository.getMongoTemplate().remove(new Query(), EntityType.SFO.getType());
+        metaDataRepository.removeAll(EntityType.SFO.getType());
 
         Map<String, List<Map<String, Object>>> middleware = (Map<String, List<Map<String, Object>>>) middlewareConfigJSON.get("gateway");
         List<Map<String, Object>> serviceProviders = middleware.get("service_providers");
@@ -64,7 +63,7 @@ public class StepUpImportController {
                                                                   APIUser apiUser) {
         LOG.info("importStepUpInstitution called by {}", apiUser.getName());
 
-        metaDataRepository.getMongoTemplate().remove(new Query(), EntityType.STEPUP.getType());
+        metaDataRepository.removeAll(EntityType.STEPUP.getType());
 
         List<MetaData> metaDataList = middlewareInstitutionJSON.entrySet().stream()
             .map(entry ->
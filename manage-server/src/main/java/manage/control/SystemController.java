@@ -3,20 +3,24 @@ package manage.control;
 import manage.api.APIUser;
 import manage.conf.Features;
 import manage.exception.EndpointNotAllowed;
+import manage.exception.ResourceNotFoundException;
 import manage.model.EntityType;
 import manage.model.MetaData;
 import manage.model.OrphanMetaData;
+import manage.model.PushJob;
 import manage.model.PushOptions;
+import manage.mongo.IndexReconciler;
 import manage.repository.MetaDataRepository;
+import manage.service.push.PushJobService;
 import manage.shibboleth.FederatedUser;
 import manage.validations.MetaDataValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.util.CollectionUtils;
@@ -37,15 +41,18 @@ public class SystemController {
 
     private final MetaDataRepository metaDataRepository;
     private final MetaDataValidator metaDataValidator;
-    private final DatabaseController databaseController;
+    private final PushJobService pushJobService;
+    private final IndexReconciler indexReconciler;
 
     @Autowired
     public SystemController(MetaDataRepository metaDataRepository,
                             MetaDataValidator metaDataValidator,
-                            DatabaseController databaseController) {
+                            PushJobService pushJobService,
+                            IndexReconciler indexReconciler) {
         this.metaDataRepository = metaDataRepository;
         this.metaDataValidator = metaDataValidator;
-        this.databaseController = databaseController;
+        this.pushJobService = pushJobService;
+        this.indexReconciler = indexReconciler;
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -54,14 +61,40 @@ public class SystemController {
         if (!federatedUser.featureAllowed(Features.PUSH)) {
             throw new EndpointNotAllowed();
         }
-        return databaseController.doPush(pushOptions);
+        return pushJobService.pushAndWait(pushOptions, federatedUser.getName());
     }
 
     @PreAuthorize("hasRole('PUSH')")
     @GetMapping("/internal/push")
     public ResponseEntity<Map> pushInternal(APIUser apiUser) {
         LOG.info("Push initiated by {}", apiUser.getName());
-        return databaseController.doPush(new PushOptions(true, true, false, false));
+        return pushJobService.pushAndWait(new PushOptions(true, true, false, false), apiUser.getName());
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/client/playground/push/jobs")
+    public ResponseEntity<PushJob> submitPushJob(@RequestBody PushOptions pushOptions, FederatedUser federatedUser) {
+        if (!federatedUser.featureAllowed(Features.PUSH)) {
+            throw new EndpointNotAllowed();
+        }
+        return new ResponseEntity<>(pushJobService.submit(pushOptions, federatedUser.getName()).pushJob(),
+            HttpStatus.ACCEPTED);
+    }
+
+    @PreAuthorize("hasRole('PUSH')")
+    @PostMapping("/internal/push/jobs")
+    public ResponseEntity<PushJob> submitPushJobInternal(APIUser apiUser) {
+        LOG.info("Push job submitted by {}", apiUser.getName());
+        return new ResponseEntity<>(
+            pushJobService.submit(new PushOptions(true, true, false, false), apiUser.getName()).pushJob(),
+            HttpStatus.ACCEPTED);
+    }
+
+    @PreAuthorize("hasAnyRole('ADMIN', 'PUSH')")
+    @GetMapping({"/client/playground/push/jobs/{id}", "/internal/push/jobs/{id}"})
+    public PushJob pushJob(@PathVariable("id") String id) {
+        return pushJobService.find(id)
+            .orElseThrow(() -> new ResourceNotFoundException(String.format("Push job %s not found", id)));
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -73,6 +106,19 @@ public class SystemController {
         return metaDataValidator.validateMigration();
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/client/playground/indexes")
+    public List<IndexReconciler.IndexReport> indexes() {
+        return indexReconciler.reconcile(false);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PutMapping("/client/playground/indexes")
+    public List<IndexReconciler.IndexReport> reconcileIndexes(FederatedUser federatedUser) {
+        LOG.info("Index reconciliation initiated by {}", federatedUser.getName());
+        return indexReconciler.reconcile(true);
+    }
+
     @PreAuthorize("hasRole('SYSTEM')")
     @DeleteMapping({"/client/playground/deleteOrphans"})
     public void deleteOrphans() {
@@ -156,7 +202,7 @@ public class SystemController {
         List<String> types = Arrays.stream(EntityType.values()).map(EntityType::getType).collect(toList());
         return groupedByEntityIdReference.entrySet().stream()
                 .filter(entry -> types.stream()
-                        .noneMatch(entityType -> mongoTemplate.exists(new BasicQuery("{\"data.entityid\":\"" + entry.getKey() + "\"}"), entityType)))
+                        .noneMatch(entityType -> metaDataRepository.entityIdExists(entityType, entry.getKey())))
                 .flatMap(entry -> entry.getValue().entrySet().stream().map(m ->
                         m.getValue().stream().map(metaData -> new OrphanMetaData(
                                 entry.getKey(),
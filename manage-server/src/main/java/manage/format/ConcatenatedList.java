@@ -0,0 +1,31 @@
+package manage.format;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of two lists after each other. Used to add the shared list of SRAM services to the allowed
+ * connections of many IdPs without copying the SRAM services for every IdP.
+ */
+public class ConcatenatedList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final List<? extends E> first;
+    private final List<? extends E> second;
+
+    public ConcatenatedList(List<? extends E> first, List<? extends E> second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public E get(int index) {
+        int firstSize = first.size();
+        return index < firstSize ? first.get(index) : second.get(index - firstSize);
+    }
+
+    @Override
+    public int size() {
+        return first.size() + second.size();
+    }
+}
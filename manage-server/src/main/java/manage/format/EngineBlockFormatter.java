@@ -5,7 +5,7 @@ import manage.model.MetaData;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
-import java.util.stream.IntStream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
@@ -14,69 +14,94 @@ import static org.springframework.util.StringUtils.hasText;
 /**
  * Mimics the parsing of metadata from the
  * https://github.com/OpenConext/OpenConext-engineblock-metadata/blob/master/src/Entity/Assembler/JanusPushMetadataAssembler.php
+ * <p>
+ * The attributes and the indexed metadata keys are compiled once into plans, so formatting an entity does not split
+ * or concatenate keys. Nested maps are only created when a value is added to them and therefore empty values never
+ * have to be removed afterwards.
  */
 @SuppressWarnings("unchecked")
 public class EngineBlockFormatter {
 
-    private static final Map<String, Optional> commonAttributes = new TreeMap<>();
-    private static final Map<String, Optional> spAttributes = new TreeMap<>();
-    private static final Map<String, Optional> idpAttributes = new TreeMap<>();
+    private static final List<Attribute> commonAttributes;
+    private static final Map<String, Attribute> coinAttributes = new ConcurrentHashMap<>();
 
+    private static final String METADATA = "metadata";
     private static final int BEGIN_INDEX = "metadata:".length();
 
+    private static final String[][] contactKeys = indexedKeys(4,
+            "contacts:%d:contactType", "contacts:%d:emailAddress", "contacts:%d:telephoneNumber",
+            "contacts:%d:givenName", "contacts:%d:surName");
+    private static final String[] discoveryNames = {
+            "name_en", "keywords_en", "name_nl", "keywords_nl", "name_pt", "keywords_pt",
+            "logo_height", "logo_url", "logo_width"};
+    private static final String[][] discoveryKeys = indexedKeys(9,
+            "DiscoveryName:%d:en", "keywords:%d:en", "DiscoveryName:%d:nl", "keywords:%d:nl",
+            "DiscoveryName:%d:pt", "keywords:%d:pt", "logo:%d:height", "logo:%d:url", "logo:%d:width");
+    private static final String[][] singleSignOnServiceKeys = indexedKeys(10,
+            "SingleSignOnService:%d:Binding", "SingleSignOnService:%d:Location");
+    private static final String[][] assertionConsumerServiceKeys = indexedKeys(30,
+            "AssertionConsumerService:%d:Binding", "AssertionConsumerService:%d:Location",
+            "AssertionConsumerService:%d:index");
+    private static final String[][] shibMdScopeKeys = indexedKeys(30,
+            "shibmd:scope:%d:allowed", "shibmd:scope:%d:regexp");
+    private static final String[][] nameIDFormatKeys = indexedKeys(3, "NameIDFormats:%d");
+
     static {
-        commonAttributes.put("entityid", of("name"));
-        commonAttributes.put("metadata:name:nl", empty());
-        commonAttributes.put("metadata:name:en", empty());
-        commonAttributes.put("metadata:displayName:en", empty());
-        commonAttributes.put("metadata:displayName:nl", empty());
-        commonAttributes.put("metadata:description:en", empty());
-        commonAttributes.put("metadata:description:nl", empty());
+        Map<String, Optional<String>> attributes = new TreeMap<>();
+        attributes.put("entityid", of("name"));
+        attributes.put("metadata:name:nl", empty());
+        attributes.put("metadata:name:en", empty());
+        attributes.put("metadata:displayName:en", empty());
+        attributes.put("metadata:displayName:nl", empty());
+        attributes.put("metadata:description:en", empty());
+        attributes.put("metadata:description:nl", empty());
         //logo is handled in separate method
-        commonAttributes.put("metadata:OrganizationName:nl", empty());
-        commonAttributes.put("metadata:OrganizationName:en", empty());
-        commonAttributes.put("metadata:OrganizationDisplayName:nl", empty());
-        commonAttributes.put("metadata:OrganizationDisplayName:en", empty());
-        commonAttributes.put("metadata:OrganizationURL:nl", empty());
-        commonAttributes.put("metadata:OrganizationURL:en", empty());
+        attributes.put("metadata:OrganizationName:nl", empty());
+        attributes.put("metadata:OrganizationName:en", empty());
+        attributes.put("metadata:OrganizationDisplayName:nl", empty());
+        attributes.put("metadata:OrganizationDisplayName:en", empty());
+        attributes.put("metadata:OrganizationURL:nl", empty());
+        attributes.put("metadata:OrganizationURL:en", empty());
 
-        commonAttributes.put("metadata:url:en", empty());
-        commonAttributes.put("metadata:url:nl", empty());
+        attributes.put("metadata:url:en", empty());
+        attributes.put("metadata:url:nl", empty());
 
-        commonAttributes.put("metadata:certData", empty());
-        commonAttributes.put("metadata:certData2", empty());
-        commonAttributes.put("metadata:certData3", empty());
+        attributes.put("metadata:certData", empty());
+        attributes.put("metadata:certData2", empty());
+        attributes.put("metadata:certData3", empty());
 
-        commonAttributes.put("state", empty());
+        attributes.put("state", empty());
         //contact persons are handled in separate method
-        commonAttributes.put("metadata:NameIDFormat", empty());
+        attributes.put("metadata:NameIDFormat", empty());
         //single log outs are handled in separate method
-        commonAttributes.put("manipulation", of("manipulation_code"));
+        attributes.put("manipulation", of("manipulation_code"));
+
+        commonAttributes = attributes.entrySet().stream()
+                .map(entry -> Attribute.compile(entry.getKey(), entry.getValue()))
+                .toList();
     }
 
     public Map<String, Object> parseServiceProvider(MetaData metaDataContainer) {
         Map<String, Object> source = metaDataContainer.getData();
+        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
 
-        Map<String, Object> serviceProvider = new TreeMap<>();
+        Map<String, Object> serviceProvider = new LinkedHashMap<>();
         serviceProvider.put("type", EntityType.SP.getJanusDbValue());
 
-        addCommonProviderAttributes(source, serviceProvider);
-        addNameIDFormats(source, serviceProvider);
+        addCommonProviderAttributes(source, metaDataFields, serviceProvider);
+        addNameIDFormats(metaDataFields, serviceProvider);
         addAttributeReleasePolicy(source, serviceProvider);
-        addAssertionConsumerService(source, serviceProvider);
-        addPrivacyStatementURL(source, serviceProvider);
-
-        spAttributes.forEach((key, value) -> this.addToResult(source, serviceProvider, key, value));
+        addAssertionConsumerService(metaDataFields, serviceProvider);
+        addPrivacyStatementURL(metaDataFields, serviceProvider);
 
-        removeEmptyValues(serviceProvider);
         return serviceProvider;
-
     }
 
     public Map<String, Object> parseIdentityProvider(MetaData metaDataContainer) {
         Map<String, Object> source = metaDataContainer.getData();
+        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
 
-        Map<String, Object> identityProvider = new TreeMap<>();
+        Map<String, Object> identityProvider = new LinkedHashMap<>();
         identityProvider.put("type", EntityType.IDP.getJanusDbValue());
 
         List<Map<String, String>> disableConsent = (List<Map<String, String>>) source.get("disableConsent");
@@ -88,21 +113,18 @@ public class EngineBlockFormatter {
         List<Map<String, String>> mfaEntities = (List<Map<String, String>>) source.get("mfaEntities");
         identityProvider.put("mfa_entities", mfaEntities == null ? new ArrayList<>() : mfaEntities);
 
-        addCommonProviderAttributes(source, identityProvider);
-        addSingleSignOnService(source, identityProvider);
-        addDiscoveryEntities(source, identityProvider);
-        addBackWardCompatabilityKeyWords(source, identityProvider);
-        idpAttributes.forEach((key, value) -> this.addToResult(source, identityProvider, key, value));
-
-        addShibMdScopes(source, identityProvider);
+        addCommonProviderAttributes(source, metaDataFields, identityProvider);
+        addSingleSignOnService(metaDataFields, identityProvider);
+        addDiscoveryEntities(metaDataFields, identityProvider);
+        addBackWardCompatabilityKeyWords(metaDataFields, identityProvider);
+        addShibMdScopes(metaDataFields, identityProvider);
 
-        removeEmptyValues(identityProvider);
         return identityProvider;
     }
 
     public Map<String, Object> parseOidcClient(MetaData metaDataContainer) {
         Map<String, Object> result = parseServiceProvider(metaDataContainer);
-        Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", s -> new TreeMap<String, Object>());
+        Map<String, Object> metadata = metadata(result);
 
         ArrayList<Object> assertionConsumerServiceContainer = new ArrayList<>();
         Map<String, String> assertionConsumerService = new TreeMap<>();
@@ -116,24 +138,25 @@ public class EngineBlockFormatter {
         return result;
     }
 
-    private void addCommonProviderAttributes(Map<String, Object> source, Map<String, Object> result) {
-        commonAttributes.forEach((key, value) -> this.addToResult(source, result, key, value));
+    private void addCommonProviderAttributes(Map<String, Object> source,
+                                             Map<String, Object> metaDataFields,
+                                             Map<String, Object> result) {
+        for (Attribute attribute : commonAttributes) {
+            attribute.apply(source, metaDataFields, result);
+        }
 
         addCoinMetadataAttributesToResult(source, result);
-        addLogo(source, result);
-        addContactPersons(source, result);
-        addSingleLogOutService(source, result);
-        addRedirectSign(source, result);
+        addLogo(metaDataFields, result);
+        addContactPersons(metaDataFields, result);
+        addSingleLogOutService(metaDataFields, result);
+        addRedirectSign(metaDataFields, result);
 
         List<Map<String, String>> allowedEntities = (List<Map<String, String>>) source.get("allowedEntities");
         result.put("allowed_connections", allowedEntities == null ? new ArrayList<>() : allowedEntities);
         result.put("allow_all_entities", source.getOrDefault("allowedall", false));
     }
 
-    private void addLogo(Map<String, Object> source, Map<String, Object> result) {
-        result = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-
+    private void addLogo(Map<String, Object> metaDataFields, Map<String, Object> result) {
         Object height = metaDataFields.get("logo:0:height");
         String url = (String) metaDataFields.get("logo:0:url");
         Object width = metaDataFields.get("logo:0:width");
@@ -145,34 +168,20 @@ public class EngineBlockFormatter {
             putIfHasText("url", url, logo);
             putIfHasText("width", width, logo);
             logoContainer.add(logo);
-            result.put("logo", logoContainer);
+            metadata(result).put("logo", logoContainer);
         }
     }
 
-    private void removeEmptyValues(Map<String, Object> result) {
-        result.entrySet().removeIf(entry -> {
-            if (entry.getValue() instanceof Map && !entry.getKey().equals("arp_attributes")) {
-                Map<String, Object> map = (Map<String, Object>) entry.getValue();
-                removeEmptyValues(map);
-                return map.isEmpty();
-            }
-            return false;
-        });
-    }
-
-    private void addContactPersons(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-        IntStream.range(0, 4).forEach(i -> {
-            String contactType = (String) metaDataFields.get("contacts:" + i + ":contactType");
-            String emailAddress = (String) metaDataFields.get("contacts:" + i + ":emailAddress");
-            String telephoneNumber = (String) metaDataFields.get("contacts:" + i + ":telephoneNumber");
-            String givenName = (String) metaDataFields.get("contacts:" + i + ":givenName");
-            String surName = (String) metaDataFields.get("contacts:" + i + ":surName");
+    private void addContactPersons(Map<String, Object> metaDataFields, Map<String, Object> result) {
+        for (String[] keys : contactKeys) {
+            String contactType = (String) metaDataFields.get(keys[0]);
+            String emailAddress = (String) metaDataFields.get(keys[1]);
+            String telephoneNumber = (String) metaDataFields.get(keys[2]);
+            String givenName = (String) metaDataFields.get(keys[3]);
+            String surName = (String) metaDataFields.get(keys[4]);
 
             if (hasText(contactType) || hasText(emailAddress) || hasText(telephoneNumber) || hasText(givenName) || hasText(surName)) {
-                ArrayList<Object> contactsContainer = (ArrayList<Object>) metadata.computeIfAbsent(
+                List<Object> contactsContainer = (List<Object>) metadata(result).computeIfAbsent(
                         "contacts", key -> new ArrayList<>());
                 Map<String, String> contact = new HashMap<>();
                 putIfHasText("contactType", contactType, contact);
@@ -182,48 +191,37 @@ public class EngineBlockFormatter {
                 putIfHasText("surName", surName, contact);
                 contactsContainer.add(contact);
             }
-        });
+        }
     }
 
-    private void addDiscoveryEntities(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-        IntStream.range(0, 9).forEach(i -> {
-            //Combine all DiscoveryName, logo and keywords into discoveries element
-            Map<String, String> discovery = new TreeMap<>();
-            List.of("en", "nl", "pt").forEach(lang -> {
-                String discoveryName = (String) metaDataFields.get("DiscoveryName:" + i + ":" + lang);
-                putIfHasText("name_" + lang, discoveryName, discovery);
-                String keyWords = (String) metaDataFields.get("keywords:" + i + ":" + lang);
-                putIfHasText("keywords_" + lang, keyWords, discovery);
-            });
-            Object height = metaDataFields.get("logo:" + i + ":height");
-            putIfHasText("logo_height", height, discovery);
-            String url = (String) metaDataFields.get("logo:" + i + ":url");
-            putIfHasText("logo_url", url, discovery);
-            Object width = metaDataFields.get("logo:" + i + ":width");
-            putIfHasText("logo_width", width, discovery);
-
-            if (!discovery.isEmpty()) {
-                List<Object> discoveryContainer = (ArrayList<Object>) metadata.computeIfAbsent(
+    private void addDiscoveryEntities(Map<String, Object> metaDataFields, Map<String, Object> result) {
+        //Combine all DiscoveryName, logo and keywords into discoveries element
+        for (String[] keys : discoveryKeys) {
+            Map<String, String> discovery = null;
+            for (int i = 0; i < keys.length; i++) {
+                String value = parseValueToString(metaDataFields.get(keys[i]));
+                if (hasText(value)) {
+                    if (discovery == null) {
+                        discovery = new TreeMap<>();
+                    }
+                    discovery.put(discoveryNames[i], value);
+                }
+            }
+            if (discovery != null) {
+                List<Object> discoveryContainer = (List<Object>) metadata(result).computeIfAbsent(
                         "discoveries", key -> new ArrayList<>());
                 discoveryContainer.add(discovery);
             }
-        });
+        }
     }
 
-    private void addBackWardCompatabilityKeyWords(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
+    private void addBackWardCompatabilityKeyWords(Map<String, Object> metaDataFields, Map<String, Object> result) {
         Map<String, String> keywordsContainer = new TreeMap<>();
-        List.of("en", "nl", "pt").forEach(lang -> {
-            Object keywords = metaDataFields.get("keywords:0:" + lang);
-            this.putIfHasText(lang, keywords, keywordsContainer);
-        });
+        putIfHasText("en", metaDataFields.get("keywords:0:en"), keywordsContainer);
+        putIfHasText("nl", metaDataFields.get("keywords:0:nl"), keywordsContainer);
+        putIfHasText("pt", metaDataFields.get("keywords:0:pt"), keywordsContainer);
         if (!keywordsContainer.isEmpty()) {
-            metadata.put("keywords", keywordsContainer);
+            metadata(result).put("keywords", keywordsContainer);
         }
     }
 
@@ -234,7 +232,7 @@ public class EngineBlockFormatter {
         }
     }
 
-    private String parseValueToString(Object value) {
+    private static String parseValueToString(Object value) {
         if (value == null) {
             return null;
         }
@@ -250,10 +248,7 @@ public class EngineBlockFormatter {
         return value.toString();
     }
 
-    private void addSingleLogOutService(Map<String, Object> source, Map<String, Object> result) {
-        result = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-
+    private void addSingleLogOutService(Map<String, Object> metaDataFields, Map<String, Object> result) {
         String location = (String) metaDataFields.get("SingleLogoutService_Location");
         String binding = (String) metaDataFields.get("SingleLogoutService_Binding");
         if (!hasText(location) && !hasText(binding)) {
@@ -264,48 +259,42 @@ public class EngineBlockFormatter {
         putIfHasText("Location", location, map);
         putIfHasText("Binding", binding, map);
         subList.add(map);
-        result.put("SingleLogoutService", subList);
+        metadata(result).put("SingleLogoutService", subList);
     }
 
-    private void addRedirectSign(Map<String, Object> source, Map<String, Object> result) {
-        result = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-
+    private void addRedirectSign(Map<String, Object> metaDataFields, Map<String, Object> result) {
         String redirectSign = parseValueToString(metaDataFields.get("redirect.sign"));
         if (hasText(redirectSign)) {
             Map<String, Boolean> redirect = new HashMap<>();
             redirect.put("sign", redirectSign.equalsIgnoreCase("1"));
-            result.put("redirect", redirect);
+            metadata(result).put("redirect", redirect);
         }
     }
 
-    private void addNameIDFormats(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-
-        IntStream.range(0, 3).forEach(i -> {
-            String nameIdFormat = (String) metaDataFields.get("NameIDFormats:" + i);
+    private void addNameIDFormats(Map<String, Object> metaDataFields, Map<String, Object> result) {
+        for (String[] keys : nameIDFormatKeys) {
+            String nameIdFormat = (String) metaDataFields.get(keys[0]);
             if (hasText(nameIdFormat)) {
-                Set<String> nameIDFormats = (Set<String>) metadata.computeIfAbsent(
+                Set<String> nameIDFormats = (Set<String>) metadata(result).computeIfAbsent(
                         "NameIDFormats", key -> new HashSet<>());
                 nameIDFormats.add(nameIdFormat);
             }
-        });
+        }
     }
 
-    private void addPrivacyStatementURL(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-        List.of("en", "nl").forEach(lang -> {
-            String privacyStatementURL = (String) metaDataFields.get("mdui:PrivacyStatementURL:" + lang);
-            if (hasText(privacyStatementURL)) {
-                Map<String, Object> privacyStatementURLs = (Map<String, Object>) metadata.computeIfAbsent("PrivacyStatementURL",
-                        key -> new TreeMap<>());
-                privacyStatementURLs.put(lang, privacyStatementURL);
+    private void addPrivacyStatementURL(Map<String, Object> metaDataFields, Map<String, Object> result) {
+        String privacyStatementURLEn = (String) metaDataFields.get("mdui:PrivacyStatementURL:en");
+        String privacyStatementURLNl = (String) metaDataFields.get("mdui:PrivacyStatementURL:nl");
+        if (hasText(privacyStatementURLEn) || hasText(privacyStatementURLNl)) {
+            Map<String, Object> privacyStatementURLs = new TreeMap<>();
+            if (hasText(privacyStatementURLEn)) {
+                privacyStatementURLs.put("en", privacyStatementURLEn);
             }
-        });
+            if (hasText(privacyStatementURLNl)) {
+                privacyStatementURLs.put("nl", privacyStatementURLNl);
+            }
+            metadata(result).put("PrivacyStatementURL", privacyStatementURLs);
+        }
     }
 
     private void addAttributeReleasePolicy(Map<String, Object> source, Map<String, Object> result) {
@@ -334,61 +323,50 @@ public class EngineBlockFormatter {
         }
     }
 
-    private void addSingleSignOnService(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-        IntStream.range(0, 10).forEach(i -> {
-            String binding = (String) metaDataFields.get("SingleSignOnService:" + i + ":Binding");
-            String location = (String) metaDataFields.get("SingleSignOnService:" + i + ":Location");
+    private void addSingleSignOnService(Map<String, Object> metaDataFields, Map<String, Object> result) {
+        for (String[] keys : singleSignOnServiceKeys) {
+            String binding = (String) metaDataFields.get(keys[0]);
+            String location = (String) metaDataFields.get(keys[1]);
 
             if (hasText(binding) || hasText(location)) {
-                ArrayList<Object> singleSignOnServiceContainer = (ArrayList<Object>) metadata.computeIfAbsent(
+                List<Object> singleSignOnServiceContainer = (List<Object>) metadata(result).computeIfAbsent(
                         "SingleSignOnService", key -> new ArrayList<>());
                 Map<String, String> singleSignOnService = new HashMap<>();
                 putIfHasText("Binding", binding, singleSignOnService);
                 putIfHasText("Location", location, singleSignOnService);
                 singleSignOnServiceContainer.add(singleSignOnService);
             }
-
-        });
+        }
     }
 
-    private void addShibMdScopes(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-        IntStream.range(0, 30).forEach(i -> {
-            String allowed = parseValueToString(metaDataFields.get("shibmd:scope:" + i + ":allowed"));
-            String regexp = parseValueToString(metaDataFields.get("shibmd:scope:" + i + ":regexp"));
+    private void addShibMdScopes(Map<String, Object> metaDataFields, Map<String, Object> result) {
+        for (String[] keys : shibMdScopeKeys) {
+            String allowed = parseValueToString(metaDataFields.get(keys[0]));
+            String regexp = parseValueToString(metaDataFields.get(keys[1]));
 
             if (hasText(allowed) || hasText(regexp)) {
-                Map<String, List<Object>> shibmdContainer = (Map<String, List<Object>>) metadata.computeIfAbsent(
+                Map<String, List<Object>> shibmdContainer = (Map<String, List<Object>>) metadata(result).computeIfAbsent(
                         "shibmd", key -> new HashMap<>());
                 List<Object> scopeContainer = shibmdContainer.computeIfAbsent("scope", key -> new ArrayList<>());
                 Map<String, Object> scope = new HashMap<>();
                 if (hasText(allowed)) {
                     scope.put("allowed", allowed);
                 }
-                if (hasText("regexp")) {
-                    scope.put("regexp", regexp);
-                }
+                //EB has always received the regexp, also when it is empty
+                scope.put("regexp", regexp);
                 scopeContainer.add(scope);
             }
-        });
+        }
     }
 
-    private void addAssertionConsumerService(Map<String, Object> source, Map<String, Object> result) {
-        final Map<String, Object> metadata = (Map<String, Object>) result.computeIfAbsent("metadata", key -> new
-                TreeMap<>());
-        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
-        IntStream.range(0, 30).forEach(i -> {
-            String binding = (String) metaDataFields.get("AssertionConsumerService:" + i + ":Binding");
-            String location = (String) metaDataFields.get("AssertionConsumerService:" + i + ":Location");
-            String index = parseValueToString(metaDataFields.get("AssertionConsumerService:" + i + ":index"));
+    private void addAssertionConsumerService(Map<String, Object> metaDataFields, Map<String, Object> result) {
+        for (String[] keys : assertionConsumerServiceKeys) {
+            String binding = (String) metaDataFields.get(keys[0]);
+            String location = (String) metaDataFields.get(keys[1]);
+            String index = parseValueToString(metaDataFields.get(keys[2]));
 
             if (hasText(binding) || hasText(location)) {
-                ArrayList<Object> assertionConsumerServiceContainer = (ArrayList<Object>) metadata.computeIfAbsent(
+                List<Object> assertionConsumerServiceContainer = (List<Object>) metadata(result).computeIfAbsent(
                         "AssertionConsumerService", key -> new ArrayList<>());
                 Map<String, String> assertionConsumerService = new HashMap<>();
                 putIfHasText("Binding", binding, assertionConsumerService);
@@ -397,47 +375,71 @@ public class EngineBlockFormatter {
 
                 assertionConsumerServiceContainer.add(assertionConsumerService);
             }
-
-        });
+        }
     }
 
     protected void addCoinMetadataAttributesToResult(Map<String, Object> source,
                                                      Map<String, Object> result) {
-        Map<String, Object> metadata = (Map<String, Object>) source.get("metaDataFields");
-        metadata.keySet().stream().filter(key -> key.startsWith("coin:"))
-                .forEach(key -> {
-                    addToResult(source, result, "metadata:" + key, empty());
-                });
+        Map<String, Object> metaDataFields = (Map<String, Object>) source.get("metaDataFields");
+        for (String key : metaDataFields.keySet()) {
+            if (key.startsWith("coin:")) {
+                coinAttributes.computeIfAbsent(key, coin -> Attribute.compile("metadata:" + coin, empty()))
+                        .apply(source, metaDataFields, result);
+            }
+        }
     }
 
     protected void addToResult(Map<String, Object> source,
                                Map<String, Object> result,
                                String compoundName,
                                Optional<String> convertTo) {
-        List<String> parts = Arrays.asList(compoundName.split(":"));
-        if (parts.size() == 1) {
-            Object o = source.get(compoundName);
-            if (o != null) {
-                result.put(convertTo.orElse(compoundName), parseValueToString(o));
+        Attribute.compile(compoundName, convertTo)
+                .apply(source, (Map<String, Object>) source.get("metaDataFields"), result);
+    }
+
+    private static Map<String, Object> metadata(Map<String, Object> result) {
+        return (Map<String, Object>) result.computeIfAbsent(METADATA, key -> new TreeMap<String, Object>());
+    }
+
+    private static String[][] indexedKeys(int count, String... formats) {
+        String[][] keys = new String[count][formats.length];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < formats.length; j++) {
+                keys[i][j] = String.format(formats[j], i);
             }
-            return;
         }
-        Iterator<String> iterator = parts.iterator();
-        Object value = null;
-        while (iterator.hasNext()) {
-            String part = iterator.next();
-            if (part.equals("metadata")) {
-                result = (Map<String, Object>) result.computeIfAbsent(part, key -> new TreeMap<String, Map<String,
-                        Object>>());
-                value = ((Map) source.get("metaDataFields")).get(compoundName.substring(BEGIN_INDEX));
-            } else {
-                if (iterator.hasNext()) {
-                    result = (Map<String, Object>) result.computeIfAbsent(part, key -> new TreeMap<String,
-                            Map<String, Object>>());
-                } else if (value != null) {
-                    result.put(convertTo.orElse(part), parseValueToString(value));
-                }
+        return keys;
+    }
+
+    /*
+     * Compiled compound name, e.g. 'metadata:OrganizationName:nl'. Names starting with 'metadata' are read from the
+     * metaDataFields and the other names from the source. The path contains the keys of the nested maps of the result.
+     */
+    private record Attribute(String sourceKey, boolean metaDataField, String[] path, String name) {
+
+        private static Attribute compile(String compoundName, Optional<String> convertTo) {
+            String[] parts = compoundName.split(":");
+            if (parts.length == 1) {
+                return new Attribute(compoundName, false, new String[0], convertTo.orElse(compoundName));
+            }
+            //Nested names outside of the metadata are never added to the result
+            boolean metaDataField = parts[0].equals(METADATA);
+            return new Attribute(metaDataField ? compoundName.substring(BEGIN_INDEX) : null, metaDataField,
+                    Arrays.copyOf(parts, parts.length - 1), convertTo.orElse(parts[parts.length - 1]));
+        }
+
+        private void apply(Map<String, Object> source, Map<String, Object> metaDataFields, Map<String, Object> result) {
+            if (sourceKey == null) {
+                return;
+            }
+            Object value = metaDataField ? metaDataFields.get(sourceKey) : source.get(sourceKey);
+            if (value == null) {
+                return;
+            }
+            for (String part : path) {
+                result = (Map<String, Object>) result.computeIfAbsent(part, key -> new TreeMap<String, Object>());
             }
+            result.put(name, parseValueToString(value));
         }
     }
 
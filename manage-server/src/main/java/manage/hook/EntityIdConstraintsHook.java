@@ -8,9 +8,12 @@ import org.springframework.util.CollectionUtils;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static manage.model.EntityType.*;
@@ -53,22 +56,30 @@ public class EntityIdConstraintsHook extends MetaDataHookAdapter {
         relationsToCheck.put("serviceProviderIds", Arrays.asList(SP, RP));
         relationsToCheck.put("identityProviderIds", singletonList(IDP));
 
+        //All references to the same entity types are resolved at once
+        Map<List<EntityType>, Set<String>> referencedEntityIds = new HashMap<>();
+        relationsToCheck.forEach((key, value) -> references(newMetaData, key).forEach(map ->
+                referencedEntityIds.computeIfAbsent(value, k -> new HashSet<>()).add(map.get("name"))));
+        Map<List<EntityType>, Set<String>> existingEntityIds = new HashMap<>();
+        referencedEntityIds.forEach((entityTypes, entityIds) -> existingEntityIds.put(entityTypes,
+                metaDataRepository.existingEntityIds(entityTypes.stream().map(EntityType::getType).collect(toList()), entityIds)));
+
         relationsToCheck.forEach((key, value) -> {
-            if (newMetaData.getData().containsKey(key)) {
-                List<Map<String, String>> references = (List<Map<String, String>>) newMetaData.getData().get(key);
-                if (!CollectionUtils.isEmpty(references)) {
-                    List<Map<String, String>> strippedReferences = references.stream()
-                            .filter(map -> value.stream()
-                                    .anyMatch(entityType ->
-                                            !CollectionUtils.isEmpty(
-                                                    metaDataRepository.findRaw(entityType.getType(),
-                                                            String.format("{\"data.entityid\" : \"%s\"}", map.get("name")))))
-                            ).collect(toList());
-                    newMetaData.getData().put(key, strippedReferences);
-                }
+            List<Map<String, String>> references = references(newMetaData, key);
+            if (!CollectionUtils.isEmpty(references)) {
+                Set<String> existing = existingEntityIds.get(value);
+                List<Map<String, String>> strippedReferences = references.stream()
+                        .filter(map -> existing.contains(map.get("name")))
+                        .collect(toList());
+                newMetaData.getData().put(key, strippedReferences);
             }
         });
         return newMetaData;
     }
 
+    private List<Map<String, String>> references(MetaData metaData, String key) {
+        List<Map<String, String>> references = (List<Map<String, String>>) metaData.getData().get(key);
+        return references == null ? emptyList() : references;
+    }
+
 }
@@ -8,6 +8,8 @@ import manage.repository.MetaDataRepository;
 import org.everit.json.schema.Schema;
 import org.everit.json.schema.ValidationException;
 
+import java.util.List;
+
 public class OrganisationDeletionHook extends MetaDataHookAdapter {
 
     private final MetaDataAutoConfiguration metaDataAutoConfiguration;
@@ -32,9 +34,8 @@ public class OrganisationDeletionHook extends MetaDataHookAdapter {
     public MetaData preDelete(MetaData metaDataToBeDeleted, AbstractUser user) {
         String id = metaDataToBeDeleted.getId();
 
-        if (metaDataRepository.retrieveAllEntities().stream().anyMatch(
-            entity -> null != entity.getData() && null != entity.getData().get(ORGANISATION_ID_FIELD) &&
-                entity.getData().get(ORGANISATION_ID_FIELD).equals(id))) {
+        if (metaDataRepository.existsByField(List.of(EntityType.SP.getType(), EntityType.RP.getType()),
+            ORGANISATION_ID_FIELD, id)) {
 
             Schema schema = metaDataAutoConfiguration.schema(EntityType.ORG.getType());
             throw new ValidationException(
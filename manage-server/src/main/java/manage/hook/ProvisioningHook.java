@@ -96,7 +96,7 @@ public class ProvisioningHook extends MetaDataHookAdapter {
     private MetaData filterInvalidApplications(MetaData metaData) {
         List<Map<String, String>> applications = (List<Map<String, String>>) metaData.getData().getOrDefault("applications", Collections.emptyList());
         List<Map<String, String>> newApplications = applications.stream()
-                .filter(application -> metaDataRepository.findById(application.get("id"), application.get("type")) != null)
+                .filter(application -> metaDataRepository.exists(application.get("id"), application.get("type")))
                 .collect(toList());
         metaData.getData().put("applications", newApplications);
         return metaData;
@@ -115,9 +115,7 @@ public class ProvisioningHook extends MetaDataHookAdapter {
                         schema,
                         "coin:institution_guid is required, for scim provisioning with an eduID scim_user_identifier.", null, null);
             } else {
-                List<MetaData> references = metaDataRepository.findRaw(IDP.getType(),
-                        String.format("{\"data.metaDataFields.coin:institution_guid\" : \"%s\"}", institutionGuid));
-                if (references.isEmpty()) {
+                if (!metaDataRepository.institutionGuidExists(IDP.getType(), institutionGuid)) {
                     Schema schema = metaDataAutoConfiguration.schema(EntityType.PROV.getType());
                     throw new ValidationException(
                             schema,
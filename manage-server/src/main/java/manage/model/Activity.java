@@ -0,0 +1,47 @@
+package manage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * The recent activity projection of one MetaData in a MetaData or revision collection. The id is the id of the
+ * MetaData, so the GUI can link to the entity or the revision. Recent activity is read with an index range scan on
+ * the entity types sorted by the time of the activity.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "activity")
+@CompoundIndex(name = "entityType_at", def = "{'entityType': 1, 'at': -1}")
+public class Activity {
+
+    @Id
+    private String id;
+
+    private String entityType;
+
+    //The created instant of the revision or the terminated instant for deletions
+    private Instant at;
+
+    private String type;
+
+    private Long version;
+
+    private Revision revision;
+
+    private Map<String, Object> data;
+
+    public MetaData toMetaData() {
+        if (revision != null && revision.getTerminated() != null) {
+            revision.markCreatedWithTerminatedInstant();
+        }
+        return new MetaData(id, version, type, revision, data);
+    }
+}
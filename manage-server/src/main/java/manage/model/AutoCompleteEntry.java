@@ -0,0 +1,34 @@
+package manage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+/**
+ * The normalized values of the autocompleted fields of one MetaData and the suffixes of the words in these values.
+ * A search term is found with an index range scan on the suffixes that start with the term.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "autocomplete")
+@CompoundIndex(name = "type_suffixes", def = "{'type': 1, 'suffixes': 1}")
+public class AutoCompleteEntry {
+
+    @Id
+    private String id;
+
+    private String type;
+
+    private String metaDataId;
+
+    private List<String> values;
+
+    private List<String> suffixes;
+
+}
@@ -0,0 +1,36 @@
+package manage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * The moment a MetaData was last saved or deleted. A deleted MetaData keeps its entity change as a tombstone, so a
+ * delta push can report the deletion. The id is the type and the id of the MetaData.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = EntityChange.COLLECTION)
+@CompoundIndex(name = "type_modified", def = "{'type': 1, 'modified': -1}")
+public class EntityChange {
+
+    public static final String COLLECTION = "entity_changes";
+
+    @Id
+    private String id;
+
+    private String type;
+
+    private String metaDataId;
+
+    private Instant modified;
+
+    private boolean deleted;
+
+}
@@ -0,0 +1,24 @@
+package manage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "policy_enforcement")
+public class PolicyEnforcement {
+
+    @Id
+    private String policyId;
+
+    private List<String> serviceProviderIds;
+
+    private List<String> identityProviderIds;
+
+}
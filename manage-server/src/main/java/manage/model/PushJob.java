@@ -0,0 +1,61 @@
+package manage.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A push that is executed asynchronously. The job is stored, so every node can report its status. The progress and
+ * result per target are updated while the push is running.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Document("push_jobs")
+public class PushJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    @Id
+    private String id;
+
+    private Status status;
+
+    private PushOptions pushOptions;
+
+    private String requestedBy;
+
+    private String nodeId;
+
+    private Instant created;
+
+    private Instant started;
+
+    private Instant finished;
+
+    private Map<String, Map<String, Object>> targets = new HashMap<>();
+
+    private Map<String, Object> result;
+
+    @Indexed(expireAfter = "0s")
+    private Instant expiresAt;
+
+    public PushJob(String id, PushOptions pushOptions, String requestedBy, String nodeId, Instant created, Instant expiresAt) {
+        this.id = id;
+        this.status = Status.QUEUED;
+        this.pushOptions = pushOptions;
+        this.requestedBy = requestedBy;
+        this.nodeId = nodeId;
+        this.created = created;
+        this.expiresAt = expiresAt;
+    }
+}
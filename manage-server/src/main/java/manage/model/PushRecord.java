@@ -0,0 +1,32 @@
+package manage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "push_records")
+public class PushRecord {
+
+    public static final String LAST_PUSH = "last";
+
+    @Id
+    private String id;
+
+    private Instant started;
+
+    private String nodeId;
+
+    private List<String> targets;
+
+    private Map<String, Object> result;
+
+}
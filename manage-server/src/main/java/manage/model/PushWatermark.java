@@ -0,0 +1,26 @@
+package manage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "push_watermarks")
+public class PushWatermark {
+
+    @Id
+    private String target;
+
+    private Instant lastPush;
+
+    private Instant lastFullPush;
+
+    private String digest;
+
+}
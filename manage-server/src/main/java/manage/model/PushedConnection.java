@@ -0,0 +1,31 @@
+package manage.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * An EngineBlock connection as it was last pushed successfully. The connection is stored as JSON, because the keys
+ * of ARP attributes may contain dots.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = PushedConnection.COLLECTION)
+public class PushedConnection {
+
+    public static final String COLLECTION = "pushed_connections";
+
+    //The changed connections of a push that is being sent
+    public static final String PENDING_COLLECTION = "pushed_connections_pending";
+
+    @Id
+    private String id;
+
+    private String digest;
+
+    private String connection;
+
+}
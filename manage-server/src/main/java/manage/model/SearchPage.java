@@ -0,0 +1,15 @@
+package manage.model;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A page of search results. The continuation token is null for the last page and the total count is only present if
+ * requested.
+ */
+public record SearchPage<T>(List<T> results, String continuationToken, Long totalCount) {
+
+    public <R> SearchPage<R> map(Function<T, R> mapper) {
+        return new SearchPage<>(results.stream().map(mapper).toList(), continuationToken, totalCount);
+    }
+}
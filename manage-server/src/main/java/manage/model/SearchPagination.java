@@ -0,0 +1,18 @@
+package manage.model;
+
+/**
+ * The requested page of a search. The continuation token is returned by the previous page, the sort is a field path
+ * prefixed with a '-' for a descending sort.
+ */
+public record SearchPagination(Integer limit, String continuationToken, String sort, boolean count) {
+
+    public static final SearchPagination DEFAULT = new SearchPagination(null, null, null, false);
+
+    public boolean descending() {
+        return sort != null && sort.startsWith("-");
+    }
+
+    public String sortKey() {
+        return sort == null || sort.isBlank() ? "_id" : (descending() ? sort.substring(1) : sort);
+    }
+}
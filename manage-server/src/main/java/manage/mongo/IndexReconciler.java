@@ -0,0 +1,292 @@
+package manage.mongo;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.IndexOptions;
+import manage.conf.IndexConfiguration;
+import manage.conf.MetaDataAutoConfiguration;
+import manage.model.EntityType;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static manage.mongo.MongoChangelog.REVISION_POSTFIX;
+
+/**
+ * Compares the indexes declared in the schemas and the indexes required by the queries of the MetaDataRepository with
+ * the indexes of the MetaData and revision collections. Missing indexes are created, unused and redundant indexes are
+ * only reported. Indexes are compared by their keys and collation, as Mongo only uses a collated index for queries with
+ * the same collation. The entityID lookups are therefore declared with the collation of the unique case-insensitive
+ * index on data.entityid.
+ */
+@Component
+public class IndexReconciler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexReconciler.class);
+
+    private static final String ID_INDEX = "_id_";
+
+    private static final Document CASE_INSENSITIVE = new Document("locale", "en").append("strength", 2);
+
+    public record DeclaredIndex(String collection, Document key, boolean unique, boolean sparse, Document collation,
+                                String reason) {
+
+        public String description() {
+            String description = IndexReconciler.description(key);
+            return collation == null ? description :
+                String.format("%s (%s/%s)", description, collation.get("locale"), collation.get("strength"));
+        }
+    }
+
+    public record IndexReport(String collection,
+                              List<String> created,
+                              List<String> missing,
+                              List<String> failed,
+                              List<String> unused,
+                              List<String> redundant) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final MetaDataAutoConfiguration metaDataAutoConfiguration;
+    private final boolean reconcileOnStartup;
+
+    public IndexReconciler(MongoTemplate mongoTemplate,
+                           MetaDataAutoConfiguration metaDataAutoConfiguration,
+                           @Value("${mongo.indexes.reconcile_on_startup}") boolean reconcileOnStartup) {
+        this.mongoTemplate = mongoTemplate;
+        this.metaDataAutoConfiguration = metaDataAutoConfiguration;
+        this.reconcileOnStartup = reconcileOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileAfterStartup() {
+        if (reconcileOnStartup) {
+            Thread.ofVirtual().name("index-reconciler").start(() -> {
+                try {
+                    reconcile(true);
+                } catch (RuntimeException e) {
+                    LOG.error("Index reconciliation failed", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reports the differences and creates the missing indexes if create is true
+     */
+    public List<IndexReport> reconcile(boolean create) {
+        Map<String, List<DeclaredIndex>> declaredIndexes = declaredIndexes().stream()
+            .collect(Collectors.groupingBy(DeclaredIndex::collection, LinkedHashMap::new, Collectors.toList()));
+        List<IndexReport> reports = new ArrayList<>();
+        declaredIndexes.forEach((collection, declared) -> reports.add(reconcile(collection, declared, create)));
+        return reports;
+    }
+
+    public List<DeclaredIndex> declaredIndexes() {
+        List<DeclaredIndex> declared = new ArrayList<>();
+        Stream.of(EntityType.values()).forEach(entityType -> {
+            String type = entityType.getType();
+            String revisionType = type.concat(REVISION_POSTFIX);
+            metaDataAutoConfiguration.indexConfigurations(type).stream()
+                .filter(indexConfiguration -> "field".equals(indexConfiguration.getType()))
+                .forEach(indexConfiguration -> declared.add(new DeclaredIndex(type, schemaKey(indexConfiguration),
+                    indexConfiguration.isUnique(), false, null, "schema " + indexConfiguration.getName())));
+            if (!entityType.equals(EntityType.STT)) {
+                declared.add(new DeclaredIndex(type, new Document("data.entityid", 1), true, false, CASE_INSENSITIVE,
+                    "entityID lookups"));
+            }
+            declared.add(index(type, "rebuild of the activity log and entity changes", "revision.created", -1));
+            declared.add(index(revisionType, "revisions", "revision.parentId", 1));
+            declared.add(index(revisionType, "rebuild of the activity log and entity changes", "revision.terminated", -1));
+            switch (entityType) {
+                case IDP -> {
+                    declared.add(index(type, "whiteListing and search", "data.state", 1));
+                    declared.add(index(type, "allowedEntities", "data.allowedEntities.name", 1));
+                    declared.add(index(type, "provisioning institution_guid", "data.metaDataFields.coin:institution_guid", 1));
+                }
+                case SP -> {
+                    declared.add(index(type, "whiteListing and search", "data.state", 1));
+                    declared.add(index(type, "allowedEntities", "data.allowedEntities.name", 1));
+                    declared.add(sparseIndex(type, "organisation references", "data.organisationid"));
+                }
+                case SRAM -> {
+                    declared.add(index(type, "whiteListing and search", "data.state", 1));
+                    declared.add(index(type, "allowedEntities", "data.allowedEntities.name", 1));
+                }
+                case RP -> {
+                    declared.add(index(type, "whiteListing and search", "data.state", 1));
+                    declared.add(index(type, "allowedEntities", "data.allowedEntities.name", 1));
+                    declared.add(index(type, "relyingParties", "data.allowedResourceServers.name", 1));
+                    declared.add(sparseIndex(type, "organisation references", "data.organisationid"));
+                }
+                case ORG -> declared.add(sparseIndex(type, "unique organisation name", "data.name"));
+                case PDP -> {
+                    declared.add(index(type, "spPolicies", "data.serviceProviderIds.name", 1));
+                    declared.add(index(type, "idpPolicies", "data.identityProviderIds.name", 1));
+                }
+                case PROV -> declared.add(index(type, "provisioning", "data.applications.id", 1));
+                default -> {
+                }
+            }
+        });
+        return declared;
+    }
+
+    private IndexReport reconcile(String collectionName, List<DeclaredIndex> declared, boolean create) {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        List<Document> existing = collection.listIndexes().into(new ArrayList<>());
+        List<String> created = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        Set<String> descriptions = new HashSet<>();
+        declared.stream()
+            .filter(declaredIndex -> descriptions.add(declaredIndex.description()))
+            .filter(declaredIndex -> existing.stream().noneMatch(index -> sameKey(index.get("key", Document.class), declaredIndex.key()) &&
+                sameCollation(index.get("collation", Document.class), declaredIndex.collation())))
+            .forEach(declaredIndex -> {
+                if (!create) {
+                    missing.add(declaredIndex.description());
+                    return;
+                }
+                try {
+                    collection.createIndex(declaredIndex.key(), new IndexOptions().background(true)
+                        .unique(declaredIndex.unique()).sparse(declaredIndex.sparse())
+                        .collation(collation(declaredIndex.collation())));
+                    created.add(declaredIndex.description());
+                    LOG.info("Created index {} on {} for {}", declaredIndex.description(), collectionName, declaredIndex.reason());
+                } catch (MongoException e) {
+                    failed.add(declaredIndex.description() + ": " + e.getMessage());
+                    LOG.error("Failed to create index {} on {}", declaredIndex.description(), collectionName, e);
+                }
+            });
+        return new IndexReport(collectionName, created, missing, failed, unused(collection, existing), redundant(existing));
+    }
+
+    /*
+     * The usage counters of $indexStats are reset when the Mongo server restarts. Unique and TTL indexes are never
+     * reported, as they are not there for queries.
+     */
+    private List<String> unused(MongoCollection<Document> collection, List<Document> existing) {
+        List<String> candidates = existing.stream()
+            .filter(index -> !isConstraint(index))
+            .map(index -> index.getString("name"))
+            .toList();
+        List<String> unused = new ArrayList<>();
+        collection.aggregate(List.of(new Document("$indexStats", new Document()))).forEach(stats -> {
+            Document accesses = stats.get("accesses", Document.class);
+            Number ops = accesses == null ? null : accesses.get("ops", Number.class);
+            if (candidates.contains(stats.getString("name")) && ops != null && ops.longValue() == 0) {
+                unused.add(stats.getString("name"));
+            }
+        });
+        return unused;
+    }
+
+    /*
+     * An index is redundant if its keys are a prefix of the keys of a longer index or equal to the keys of a unique
+     * index, both with the same collation
+     */
+    private List<String> redundant(List<Document> existing) {
+        return existing.stream()
+            .filter(index -> !isConstraint(index) && !isText(index))
+            .filter(index -> existing.stream().anyMatch(other -> other != index && !isText(other) &&
+                Objects.equals(index.get("collation"), other.get("collation")) &&
+                isPrefix(index.get("key", Document.class), other.get("key", Document.class)) &&
+                (index.get("key", Document.class).size() < other.get("key", Document.class).size() || isConstraint(other))))
+            .map(index -> index.getString("name"))
+            .collect(Collectors.toList());
+    }
+
+    private static DeclaredIndex index(String collection, String reason, String field, int direction) {
+        return new DeclaredIndex(collection, new Document(field, direction), false, false, null, reason);
+    }
+
+    //Only the documents with the field are indexed
+    private static DeclaredIndex sparseIndex(String collection, String reason, String field) {
+        return new DeclaredIndex(collection, new Document(field, 1), false, true, null, reason);
+    }
+
+    private static Collation collation(Document collation) {
+        return collation == null ? null : Collation.builder()
+            .locale(collation.getString("locale"))
+            .collationStrength(CollationStrength.fromInt(collation.getInteger("strength")))
+            .build();
+    }
+
+    private static Document schemaKey(IndexConfiguration indexConfiguration) {
+        Document key = new Document();
+        indexConfiguration.getFields().forEach(field -> key.append("data." + field, 1));
+        return key;
+    }
+
+    private static boolean isConstraint(Document index) {
+        return ID_INDEX.equals(index.getString("name")) || Boolean.TRUE.equals(index.get("unique")) ||
+            index.containsKey("expireAfterSeconds");
+    }
+
+    private static boolean isText(Document index) {
+        return index.get("key", Document.class).values().stream().anyMatch("text"::equals);
+    }
+
+    private static boolean sameKey(Document key, Document other) {
+        return key.size() == other.size() && isPrefix(key, other);
+    }
+
+    /*
+     * Mongo returns all the options of a collation, so only the locale and strength are compared. An index without
+     * collation or with the simple locale uses the binary comparison of the default collation.
+     */
+    private static boolean sameCollation(Document collation, Document declared) {
+        boolean simple = collation == null || "simple".equals(collation.getString("locale"));
+        if (declared == null) {
+            return simple;
+        }
+        return !simple && declared.get("locale").equals(collation.getString("locale")) &&
+            declared.getInteger("strength") == collation.get("strength", (Number) 3).intValue();
+    }
+
+    private static boolean isPrefix(Document key, Document other) {
+        if (key.size() > other.size()) {
+            return false;
+        }
+        List<Map.Entry<String, Object>> keyEntries = new ArrayList<>(key.entrySet());
+        List<Map.Entry<String, Object>> otherEntries = new ArrayList<>(other.entrySet());
+        for (int i = 0; i < keyEntries.size(); i++) {
+            Map.Entry<String, Object> entry = keyEntries.get(i);
+            Map.Entry<String, Object> otherEntry = otherEntries.get(i);
+            if (!entry.getKey().equals(otherEntry.getKey()) ||
+                !direction(entry.getValue()).equals(direction(otherEntry.getValue()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Indexes created from the shell have double directions
+    private static Object direction(Object value) {
+        return value instanceof Number number ? (Object) Integer.signum(number.intValue()) : value;
+    }
+
+    private static String description(Document key) {
+        return key.entrySet().stream()
+            .map(entry -> entry.getKey() + "_" + direction(entry.getValue()))
+            .collect(Collectors.joining("_"));
+    }
+}
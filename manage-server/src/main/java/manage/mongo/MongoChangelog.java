@@ -9,6 +9,10 @@ import manage.conf.MetaDataAutoConfiguration;
 import manage.model.EntityType;
 import manage.model.MetaData;
 import manage.model.Scope;
+import manage.repository.ActivityLog;
+import manage.repository.AutoCompleteIndex;
+import manage.repository.EntityChanges;
+import manage.repository.PolicyEnforcementIndex;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -453,6 +457,26 @@ public class MongoChangelog {
             });
     }
 
+    @ChangeSet(order = "020", id = "buildPolicyEnforcementIndex", author = "okke.harsta@surf.nl")
+    public void buildPolicyEnforcementIndex(PolicyEnforcementIndex policyEnforcementIndex) {
+        policyEnforcementIndex.rebuild();
+    }
+
+    @ChangeSet(order = "021", id = "buildAutoCompleteIndex", author = "okke.harsta@surf.nl")
+    public void buildAutoCompleteIndex(AutoCompleteIndex autoCompleteIndex) {
+        autoCompleteIndex.rebuild();
+    }
+
+    @ChangeSet(order = "022", id = "buildActivityLog", author = "okke.harsta@surf.nl")
+    public void buildActivityLog(ActivityLog activityLog) {
+        activityLog.rebuild();
+    }
+
+    @ChangeSet(order = "023", id = "buildEntityChanges", author = "okke.harsta@surf.nl")
+    public void buildEntityChanges(EntityChanges entityChanges) {
+        entityChanges.rebuild();
+    }
+
     private void migrateRelayingPartyToResourceServer(Map<String, Map<String, Object>> properties, List<Pattern> patterns, Map<String, Object> simpleProperties, MetaData rs) {
         rs.setType(EntityType.RS.getType());
         rs.getData().entrySet().removeIf(entry -> !properties.containsKey(entry.getKey()));
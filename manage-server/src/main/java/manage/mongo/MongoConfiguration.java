@@ -4,6 +4,7 @@ import io.mongock.driver.mongodb.springdata.v4.SpringDataMongoV4Driver;
 import io.mongock.runner.springboot.MongockSpringboot;
 import io.mongock.runner.springboot.base.MongockApplicationRunner;
 import manage.conf.MetaDataAutoConfiguration;
+import org.springframework.boot.mongodb.autoconfigure.MongoClientSettingsBuilderCustomizer;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -42,6 +43,11 @@ public class MongoConfiguration {
         return new MongoTransactionManager(mongoTemplate.getMongoDatabaseFactory());
     }
 
+    @Bean
+    public MongoClientSettingsBuilderCustomizer queryProfilerCustomizer(QueryProfiler queryProfiler) {
+        return builder -> builder.addCommandListener(queryProfiler);
+    }
+
 
 
 }
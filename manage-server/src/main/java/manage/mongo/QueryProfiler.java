@@ -0,0 +1,306 @@
+package manage.mongo;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the latency and the number of returned documents of the Mongo queries per call site - the first method of
+ * Manage on the stack, e.g. MetaDataRepository.whiteListing - and the caller of the call site, e.g. a hook. The first
+ * query and every explain_interval-th query of a call site are explained to sample whether an index is used. Queries
+ * slower than the threshold are logged with the shape of the query without the values.
+ */
+@Component
+public class QueryProfiler implements CommandListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryProfiler.class);
+
+    public static final String QUERY_METRIC = "manage.mongo.query";
+    public static final String DOCUMENTS_METRIC = "manage.mongo.query.documents";
+    public static final String COLLECTION_SCANS_METRIC = "manage.mongo.query.collection_scans";
+
+    private static final Set<String> PROFILED_COMMANDS = Set.of("find", "count", "aggregate", "distinct", "getMore", "findAndModify");
+    private static final Set<String> EXPLAINED_COMMANDS = Set.of("find", "count");
+    private static final Set<String> QUERY_FIELDS = Set.of(
+        "find", "count", "aggregate", "distinct", "findAndModify", "filter", "query", "pipeline", "sort", "projection",
+        "limit", "skip", "collation", "hint");
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+
+    private record CallSite(String callSite, String caller) {
+    }
+
+    private record Started(CallSite callSite, String command, String collection, BsonDocument query) {
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<MongoTemplate> mongoTemplateProvider;
+    private final boolean enabled;
+    private final long slowQueryMillis;
+    private final long explainInterval;
+    private final Map<Integer, Started> started = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> explainCounters = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> plans = new ConcurrentHashMap<>();
+
+    public QueryProfiler(MeterRegistry meterRegistry,
+                         ObjectProvider<MongoTemplate> mongoTemplateProvider,
+                         @Value("${mongo.profiler.enabled}") boolean enabled,
+                         @Value("${mongo.profiler.slow_query_millis}") long slowQueryMillis,
+                         @Value("${mongo.profiler.explain_interval}") long explainInterval) {
+        this.meterRegistry = meterRegistry;
+        this.mongoTemplateProvider = mongoTemplateProvider;
+        this.enabled = enabled;
+        this.slowQueryMillis = slowQueryMillis;
+        this.explainInterval = explainInterval;
+    }
+
+    /*
+     * The synchronous driver calls the listener on the thread that executes the command, so the stack holds the call site.
+     * The command is only valid during the callback and the query fields are copied.
+     */
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (!enabled || !PROFILED_COMMANDS.contains(event.getCommandName())) {
+            return;
+        }
+        CallSite callSite = callSite();
+        if (callSite == null) {
+            return;
+        }
+        BsonDocument command = event.getCommand();
+        BsonValue collection = command.get(event.getCommandName().equals("getMore") ? "collection" : event.getCommandName());
+        BsonDocument query = new BsonDocument();
+        command.forEach((key, value) -> {
+            if (QUERY_FIELDS.contains(key)) {
+                query.put(key, value);
+            }
+        });
+        started.put(event.getRequestId(), new Started(callSite, event.getCommandName(),
+            collection != null && collection.isString() ? collection.asString().getValue() : "-", query.clone()));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Started command = started.remove(event.getRequestId());
+        if (command == null) {
+            return;
+        }
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        int documents = documents(event.getResponse());
+        Tags tags = Tags.of(
+            "callSite", command.callSite().callSite(),
+            "caller", command.callSite().caller(),
+            "command", command.command(),
+            "collection", command.collection());
+        Timer.builder(QUERY_METRIC)
+            .description("Mongo queries per call site")
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder(DOCUMENTS_METRIC)
+            .description("Documents returned by the Mongo queries per call site")
+            .tags(tags)
+            .register(meterRegistry)
+            .record(documents);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (millis >= slowQueryMillis) {
+            LOG.warn("Slow {} on {} by {} from {} took {} ms and returned {} documents: {}",
+                command.command(), command.collection(), command.callSite().callSite(), command.callSite().caller(),
+                millis, documents, shape(command.query()).toJson());
+        }
+        explainSample(command);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        started.remove(event.getRequestId());
+    }
+
+    /**
+     * The latency, documents and sampled plan per call site, slowest in total first
+     */
+    public List<Map<String, Object>> queries() {
+        List<Map<String, Object>> queries = new ArrayList<>();
+        meterRegistry.find(QUERY_METRIC).timers().forEach(timer -> {
+            Map<String, Object> query = new LinkedHashMap<>();
+            timer.getId().getTags().forEach(tag -> query.put(tag.getKey(), tag.getValue()));
+            query.put("count", timer.count());
+            query.put("totalMillis", timer.totalTime(TimeUnit.MILLISECONDS));
+            query.put("meanMillis", timer.mean(TimeUnit.MILLISECONDS));
+            query.put("maxMillis", timer.max(TimeUnit.MILLISECONDS));
+            DistributionSummary documents = meterRegistry.find(DOCUMENTS_METRIC).tags(timer.getId().getTags()).summary();
+            query.put("meanDocuments", documents == null ? null : documents.mean());
+            query.put("plan", plans.get(planKey((String) query.get("callSite"), (String) query.get("collection"))));
+            queries.add(query);
+        });
+        queries.sort(Comparator.comparing(query -> -((Double) query.get("totalMillis"))));
+        return queries;
+    }
+
+    /*
+     * Replaces all values with '?', but keeps the field names and operators
+     */
+    static BsonDocument shape(BsonDocument document) {
+        BsonDocument shape = new BsonDocument();
+        document.forEach((key, value) -> shape.put(key, shapeValue(value)));
+        return shape;
+    }
+
+    private static BsonValue shapeValue(BsonValue value) {
+        if (value.isDocument()) {
+            return shape(value.asDocument());
+        }
+        if (value.isArray() && value.asArray().stream().anyMatch(BsonValue::isDocument)) {
+            BsonArray array = new BsonArray();
+            value.asArray().forEach(element -> array.add(shapeValue(element)));
+            return array;
+        }
+        return new BsonString("?");
+    }
+
+    private void explainSample(Started command) {
+        if (explainInterval <= 0 || !EXPLAINED_COMMANDS.contains(command.command())) {
+            return;
+        }
+        String key = planKey(command.callSite().callSite(), command.collection());
+        long count = explainCounters.computeIfAbsent(key, k -> new AtomicLong()).getAndIncrement();
+        if (count % explainInterval == 0) {
+            Thread.ofVirtual().name("query-explain").start(() -> explain(key, command));
+        }
+    }
+
+    private void explain(String key, Started command) {
+        try {
+            MongoTemplate mongoTemplate = mongoTemplateProvider.getObject();
+            Document explain = mongoTemplate.getDb().runCommand(new BsonDocument("explain", command.query())
+                .append("verbosity", new BsonString("queryPlanner")));
+            Document queryPlanner = explain.get("queryPlanner", Document.class);
+            Set<String> stages = new LinkedHashSet<>();
+            Set<String> indexes = new LinkedHashSet<>();
+            plan(queryPlanner == null ? null : queryPlanner.get("winningPlan"), stages, indexes);
+            boolean collectionScan = stages.contains("COLLSCAN");
+            if (collectionScan) {
+                Counter.builder(COLLECTION_SCANS_METRIC)
+                    .description("Sampled Mongo queries per call site without an index")
+                    .tags("callSite", command.callSite().callSite(), "collection", command.collection())
+                    .register(meterRegistry)
+                    .increment();
+            }
+            Map<String, Object> plan = new LinkedHashMap<>();
+            plan.put("indexUsed", !indexes.isEmpty());
+            plan.put("collectionScan", collectionScan);
+            plan.put("indexes", indexes);
+            plan.put("stages", stages);
+            plan.put("query", shape(command.query()).toJson());
+            plan.put("explained", Instant.now());
+            plans.put(key, plan);
+        } catch (RuntimeException e) {
+            LOG.debug("Explain of {} failed", key, e);
+        }
+    }
+
+    /*
+     * The classic plans nest inputStage(s), the slot based execution plans nest the classic plan in queryPlan
+     */
+    private static void plan(Object stage, Set<String> stages, Set<String> indexes) {
+        if (stage instanceof Document document) {
+            if (document.containsKey("stage")) {
+                stages.add(document.getString("stage"));
+            }
+            if (document.containsKey("indexName")) {
+                indexes.add(document.getString("indexName"));
+            }
+            plan(document.get("queryPlan"), stages, indexes);
+            plan(document.get("inputStage"), stages, indexes);
+            plan(document.get("inputStages"), stages, indexes);
+        } else if (stage instanceof List<?> list) {
+            list.forEach(element -> plan(element, stages, indexes));
+        }
+    }
+
+    private static int documents(BsonDocument response) {
+        BsonDocument cursor = response.getDocument("cursor", null);
+        if (cursor != null) {
+            BsonArray batch = cursor.getArray("firstBatch", cursor.getArray("nextBatch", new BsonArray()));
+            return batch.size();
+        }
+        BsonValue value = response.get("value");
+        return value != null && value.isDocument() ? 1 : 0;
+    }
+
+    /*
+     * The first frame of Manage, e.g. MetaDataRepository.findRaw, and the first frame of another class of Manage that
+     * called it, e.g. EntityIdDuplicationHook.validate
+     */
+    private static CallSite callSite() {
+        return STACK_WALKER.walk(frames -> {
+            Iterator<StackWalker.StackFrame> iterator = frames
+                .filter(frame -> frame.getClassName().startsWith("manage.") &&
+                    !frame.getClassName().equals(QueryProfiler.class.getName()))
+                .iterator();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            StackWalker.StackFrame first = iterator.next();
+            String className = className(first);
+            while (iterator.hasNext()) {
+                StackWalker.StackFrame frame = iterator.next();
+                if (!className(frame).equals(className)) {
+                    return new CallSite(name(first), name(frame));
+                }
+            }
+            return new CallSite(name(first), "-");
+        });
+    }
+
+    private static String name(StackWalker.StackFrame frame) {
+        String methodName = frame.getMethodName();
+        //lambda$whiteListing$3 is a lambda in whiteListing
+        if (methodName.startsWith("lambda$")) {
+            String[] parts = methodName.split("\\$");
+            methodName = parts.length > 1 ? parts[1] : methodName;
+        }
+        return className(frame) + "." + methodName;
+    }
+
+    private static String className(StackWalker.StackFrame frame) {
+        String className = frame.getClassName();
+        className = className.substring(className.lastIndexOf('.') + 1);
+        int proxy = className.indexOf('$');
+        return proxy > 0 ? className.substring(0, proxy) : className;
+    }
+
+    private static String planKey(String callSite, String collection) {
+        return callSite + "|" + collection;
+    }
+}
@@ -3,12 +3,12 @@ package manage.policies;
 import lombok.SneakyThrows;
 import manage.api.APIUser;
 import manage.api.ImpersonatedUser;
-import manage.control.DatabaseController;
 import manage.model.EntityType;
 import manage.model.MetaData;
 import manage.model.PushOptions;
 import manage.repository.MetaDataRepository;
 import manage.service.MetaDataService;
+import manage.service.push.PushScheduler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -36,7 +36,7 @@ public class PolicyController {
     private final List<Map<String, Object>> allowedAttributes;
     private final List<Map<String, Object>> samlAllowedAttributes;
     private final List<String> loaLevels;
-    private final DatabaseController databaseController;
+    private final PushScheduler pushScheduler;
     private final TypeReference<List<Map<String, Object>>> typeReference = new TypeReference<>() {
     };
 
@@ -45,7 +45,7 @@ public class PolicyController {
                             ObjectMapper objectMapper,
                             PolicyIdpAccessEnforcer policyIdpAccessEnforcer,
                             MetaDataRepository metaDataRepository,
-                            DatabaseController databaseController,
+                            PushScheduler pushScheduler,
                             @Value("${policies.allowed_attributes}") Resource allowedAttributesResource,
                             @Value("${policies.extra_saml_attributes}") Resource extraSamlAttributesResource,
                             @Value("${loa_levels}") String loaLevelsCommaSeparated) {
@@ -53,7 +53,7 @@ public class PolicyController {
         this.objectMapper = objectMapper;
         this.policyIdpAccessEnforcer = policyIdpAccessEnforcer;
         this.metaDataRepository = metaDataRepository;
-        this.databaseController = databaseController;
+        this.pushScheduler = pushScheduler;
         this.allowedAttributes = this.attributes(allowedAttributesResource);
         this.allowedAttributes.sort(Comparator.comparing(o -> (String) o.get("label")));
         this.samlAllowedAttributes = this.attributes(extraSamlAttributesResource);
@@ -96,7 +96,7 @@ public class PolicyController {
         MetaData metaData = new MetaData(EntityType.PDP.getType(), data);
         MetaData metaDataSaved = this.metaDataService.doPost(metaData, apiUser, false);
         policyDefinition.setId(metaDataSaved.getId());
-        databaseController.doPush(new PushOptions(false, false, true,false));
+        pushScheduler.schedule(new PushOptions(false, false, true, false));
         return policyDefinition;
     }
 
@@ -116,7 +116,7 @@ public class PolicyController {
         existingMetaData.setData(data);
         MetaData metaData = this.metaDataService.doPut(existingMetaData, apiUser, false);
         policyDefinition.setRevisionNbr(metaData.getRevision().getNumber());
-        databaseController.doPush(new PushOptions(false, false, true, false));
+        pushScheduler.schedule(new PushOptions(false, false, true, false));
         return policyDefinition;
     }
 
@@ -128,7 +128,7 @@ public class PolicyController {
 
         policyIdpAccessEnforcer.actionAllowed(policyDefinition, PolicyAccess.WRITE, apiUser, true);
         this.metaDataService.doRemove(EntityType.PDP.getType(), id, apiUser, "Deleted by dashboard API");
-        databaseController.doPush(new PushOptions(false, false, true, false));
+        pushScheduler.schedule(new PushOptions(false, false, true, false));
 
     }
 
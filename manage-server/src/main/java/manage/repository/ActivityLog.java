@@ -0,0 +1,151 @@
+package manage.repository;
+
+import manage.model.Activity;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import manage.model.Revision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static manage.mongo.MongoChangelog.REVISION_POSTFIX;
+
+/**
+ * Keeps the activity collection in line with the MetaData and revision collections. Every saved entity, revision and
+ * deletion is logged with the fields shown in the recent activity. When an entity is updated the activity of the
+ * previous version is replaced by the activity of its revision, so every activity refers to an existing document.
+ * Only the most recent activity per entity type, which is all the recent activity can return, is kept.
+ */
+@Component
+public class ActivityLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ActivityLog.class);
+
+    public static final int MAX_RECENT_ACTIVITY = 100;
+
+    private static final List<String> DATA_FIELDS = List.of("state", "entityid", "name", "revisionnote");
+    private static final List<String> METADATA_FIELDS = List.of("name:en", "OrganizationName:en");
+
+    private final MongoTemplate mongoTemplate;
+
+    public ActivityLog(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public void log(MetaData metaData) {
+        String type = metaData.getType();
+        if (entityType(type) == null) {
+            return;
+        }
+        Revision revision = metaData.getRevision();
+        if (type.endsWith(REVISION_POSTFIX) && revision != null && revision.getTerminated() == null &&
+            revision.getParentId() != null) {
+            //The previous version of the parent is now this revision, unless the parent is already replaced
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(revision.getParentId())
+                .and("revision.number").is(revision.getNumber())), Activity.class);
+        }
+        Activity activity = activity(metaData);
+        mongoTemplate.save(activity);
+        prune(activity.getEntityType());
+    }
+
+    public void remove(MetaData metaData) {
+        if (entityType(metaData.getType()) != null) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(metaData.getId())), Activity.class);
+        }
+    }
+
+    public void removeAll(String type, Collection<String> ids) {
+        mongoTemplate.remove(Query.query(Criteria.where("type").is(type).and("_id").in(ids)), Activity.class);
+    }
+
+    public void removeAll(String type) {
+        mongoTemplate.remove(Query.query(Criteria.where("type").is(type)), Activity.class);
+    }
+
+    public List<MetaData> recentActivity(List<String> types, int max) {
+        Query query = Query.query(Criteria.where("entityType").in(types))
+            .with(Sort.by(Sort.Order.desc("at")))
+            .limit(Math.min(max, MAX_RECENT_ACTIVITY));
+        return mongoTemplate.find(query, Activity.class).stream()
+            .map(Activity::toMetaData)
+            .collect(toList());
+    }
+
+    /**
+     * Logs the most recent entities, revisions and deletions per type, which contain the most recent activity
+     */
+    public void rebuild() {
+        mongoTemplate.remove(new Query(), Activity.class);
+        Stream.of(EntityType.values()).map(EntityType::getType).forEach(type -> {
+            String revisionType = type.concat(REVISION_POSTFIX);
+            Stream.of(
+                    mongoTemplate.find(recent("revision.created"), MetaData.class, type),
+                    mongoTemplate.find(recent("revision.created"), MetaData.class, revisionType),
+                    mongoTemplate.find(recent("revision.terminated")
+                        .addCriteria(Criteria.where("revision.terminated").ne(null)), MetaData.class, revisionType))
+                .flatMap(List::stream)
+                .map(this::activity)
+                .forEach(mongoTemplate::save);
+            prune(type);
+        });
+        LOG.info("Rebuilt the activity log with {} activities", mongoTemplate.count(new Query(), Activity.class));
+    }
+
+    private void prune(String entityType) {
+        Query oldest = Query.query(Criteria.where("entityType").is(entityType))
+            .with(Sort.by(Sort.Order.desc("at")))
+            .skip(MAX_RECENT_ACTIVITY - 1)
+            .limit(1);
+        oldest.fields().include("at");
+        Activity last = mongoTemplate.findOne(oldest, Activity.class);
+        if (last != null) {
+            mongoTemplate.remove(Query.query(Criteria.where("entityType").is(entityType)
+                .and("at").lt(last.getAt())), Activity.class);
+        }
+    }
+
+    private Query recent(String sortKey) {
+        return new Query()
+            .with(Sort.by(Sort.Order.desc(sortKey)))
+            .limit(MAX_RECENT_ACTIVITY);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Activity activity(MetaData metaData) {
+        Map<String, Object> data = new HashMap<>();
+        Map<String, Object> source = metaData.getData();
+        DATA_FIELDS.stream().filter(source::containsKey).forEach(field -> data.put(field, source.get(field)));
+        Object sourceMetaDataFields = source.get("metaDataFields");
+        if (sourceMetaDataFields instanceof Map) {
+            Map<String, Object> metaDataFields = new HashMap<>();
+            METADATA_FIELDS.stream()
+                .filter(((Map<String, Object>) sourceMetaDataFields)::containsKey)
+                .forEach(field -> metaDataFields.put(field, ((Map<String, Object>) sourceMetaDataFields).get(field)));
+            data.put("metaDataFields", metaDataFields);
+        }
+        Revision revision = metaData.getRevision();
+        Instant at = revision == null ? Instant.now() :
+            revision.getTerminated() != null ? revision.getTerminated() : revision.getCreated();
+        return new Activity(metaData.getId(), entityType(metaData.getType()), at, metaData.getType(),
+            metaData.getVersion(), revision, data);
+    }
+
+    private static String entityType(String type) {
+        String entityType = type.endsWith(REVISION_POSTFIX) ?
+            type.substring(0, type.length() - REVISION_POSTFIX.length()) : type;
+        return Stream.of(EntityType.values()).anyMatch(value -> value.getType().equals(entityType)) ? entityType : null;
+    }
+}
@@ -0,0 +1,177 @@
+package manage.repository;
+
+import manage.model.AutoCompleteEntry;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keeps the autocomplete collection in line with the MetaData collections. The autocompleted fields are lower-cased
+ * and stripped of diacritics. Every suffix of every word - capped at MAX_SUFFIX_LENGTH characters - is stored, so a
+ * word that occurs anywhere in a value is found by the prefix of a suffix.
+ */
+@Component
+public class AutoCompleteIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AutoCompleteIndex.class);
+
+    static final int MAX_SUFFIX_LENGTH = 16;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORD_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final List<String> supportedLanguages;
+
+    public AutoCompleteIndex(MongoTemplate mongoTemplate,
+                             @Value("${product.supported_languages}") String supportedLanguages) {
+        this.mongoTemplate = mongoTemplate;
+        this.supportedLanguages = Stream.of(supportedLanguages.split(",")).map(String::trim).collect(toList());
+    }
+
+    public void index(MetaData metaData) {
+        if (isAutoCompleted(metaData.getType())) {
+            mongoTemplate.save(entry(metaData));
+        }
+    }
+
+    public void remove(MetaData metaData) {
+        if (isAutoCompleted(metaData.getType())) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(id(metaData))), AutoCompleteEntry.class);
+        }
+    }
+
+    public void removeAll(String type, Collection<String> metaDataIds) {
+        mongoTemplate.remove(Query.query(Criteria.where("type").is(type).and("metaDataId").in(metaDataIds)),
+            AutoCompleteEntry.class);
+    }
+
+    public void removeAll(String type) {
+        mongoTemplate.remove(Query.query(Criteria.where("type").is(type)), AutoCompleteEntry.class);
+    }
+
+    public void rebuild() {
+        Stream.of(EntityType.values()).map(EntityType::getType).forEach(type -> {
+            removeAll(type);
+            List<AutoCompleteEntry> entries = new ArrayList<>();
+            try (Stream<MetaData> metaDataStream = mongoTemplate.stream(new Query(), MetaData.class, type)) {
+                metaDataStream.forEach(metaData -> {
+                    entries.add(entry(metaData));
+                    if (entries.size() == BATCH_SIZE) {
+                        mongoTemplate.insertAll(entries);
+                        entries.clear();
+                    }
+                });
+            }
+            mongoTemplate.insertAll(entries);
+        });
+        LOG.info("Rebuilt the autocomplete index with {} entries", mongoTemplate.count(new Query(), AutoCompleteEntry.class));
+    }
+
+    /**
+     * The criteria for a normalized part of the search: the words must start a suffix - which uses the index - and
+     * the whole part must occur in one of the values
+     */
+    public Criteria criteria(String part, String escapedPart) {
+        List<Criteria> criteria = new ArrayList<>();
+        words(part).forEach(word -> criteria.add(Criteria.where("suffixes").regex("^" + cap(word))));
+        criteria.add(Criteria.where("values").regex(escapedPart));
+        return new Criteria().andOperator(criteria);
+    }
+
+    public static String normalize(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    static Set<String> suffixes(List<String> values) {
+        Set<String> suffixes = new LinkedHashSet<>();
+        values.forEach(value -> words(value).forEach(word -> {
+            for (int i = 0; i < word.length(); i++) {
+                suffixes.add(cap(word.substring(i)));
+            }
+        }));
+        return suffixes;
+    }
+
+    private static List<String> words(String normalizedValue) {
+        return Stream.of(WORD_SEPARATORS.split(normalizedValue))
+            .filter(StringUtils::hasText)
+            .collect(toList());
+    }
+
+    private static String cap(String word) {
+        return word.length() > MAX_SUFFIX_LENGTH ? word.substring(0, MAX_SUFFIX_LENGTH) : word;
+    }
+
+    private AutoCompleteEntry entry(MetaData metaData) {
+        List<String> values = values(metaData).stream()
+            .filter(Objects::nonNull)
+            .map(value -> normalize(value.toString()))
+            .filter(StringUtils::hasText)
+            .distinct()
+            .collect(toList());
+        return new AutoCompleteEntry(id(metaData), metaData.getType(), metaData.getId(), values,
+            new ArrayList<>(suffixes(values)));
+    }
+
+    /*
+     * The same fields as the regular expression search that preceded this index
+     */
+    private List<Object> values(MetaData metaData) {
+        Map<String, Object> data = metaData.getData();
+        List<Object> values = new ArrayList<>();
+        values.add(data.get("entityid"));
+        String type = metaData.getType();
+        if (EntityType.PDP.getType().equals(type)) {
+            values.add(data.get("name"));
+            values.add(data.get("description"));
+        } else if (EntityType.ORG.getType().equals(type)) {
+            values.add(data.get("name"));
+            values.add(data.get("kvkNumber"));
+            values.add(data.get("notes"));
+        } else {
+            Map<String, Object> metaDataFields = metaData.metaDataFields();
+            if (metaDataFields != null) {
+                supportedLanguages.forEach(lang -> {
+                    values.add(metaDataFields.get("name:" + lang));
+                    values.add(metaDataFields.get("discoveryName:" + lang));
+                    values.add(metaDataFields.get("displayName:" + lang));
+                    values.add(metaDataFields.get("keywords:0:" + lang));
+                    values.add(metaDataFields.get("OrganizationName:" + lang));
+                });
+            }
+        }
+        return values;
+    }
+
+    private static String id(MetaData metaData) {
+        return metaData.getType() + ":" + metaData.getId();
+    }
+
+    private static boolean isAutoCompleted(String type) {
+        return Stream.of(EntityType.values()).anyMatch(entityType -> entityType.getType().equals(type));
+    }
+}
@@ -0,0 +1,147 @@
+package manage.repository;
+
+import manage.model.EntityChange;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import manage.model.Revision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static manage.mongo.MongoChangelog.REVISION_POSTFIX;
+
+/**
+ * Keeps the entity_changes collection in line with the MetaData collections. Every write of the MetaDataRepository
+ * is registered, also the writes that do not create a revision - e.g. the validation of stored metadata - and the bulk
+ * deletes that do not terminate a revision. The delta push to EngineBlock reads the changes since the last push.
+ */
+@Component
+public class EntityChanges {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityChanges.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    public EntityChanges(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public void saved(MetaData metaData) {
+        if (isEntityType(metaData.getType())) {
+            register(metaData.getType(), List.of(metaData.getId()), false, Instant.now());
+        }
+    }
+
+    public void removed(MetaData metaData) {
+        if (isEntityType(metaData.getType())) {
+            register(metaData.getType(), List.of(metaData.getId()), true, Instant.now());
+        }
+    }
+
+    public void removedAll(String type, Collection<String> ids) {
+        if (isEntityType(type)) {
+            register(type, ids, true, Instant.now());
+        }
+    }
+
+    public List<String> changedSince(String type, Instant since) {
+        return metaDataIds(type, since, false);
+    }
+
+    public List<String> deletedSince(String type, Instant since) {
+        return metaDataIds(type, since, true);
+    }
+
+    public boolean hasChangesSince(String type, Instant since) {
+        return mongoTemplate.exists(Query.query(Criteria.where("type").is(type).and("modified").gte(since)),
+            EntityChange.class);
+    }
+
+    /**
+     * Registers the entities with the created instant of their latest revision and the deleted entities with the
+     * terminated instant of their revisions
+     */
+    public void rebuild() {
+        mongoTemplate.remove(new Query(), EntityChange.class);
+        Stream.of(EntityType.values()).map(EntityType::getType).forEach(type -> {
+            Set<String> ids = new HashSet<>();
+            Query query = new Query();
+            query.fields().include("revision.created");
+            try (Stream<MetaData> metaDataStream = mongoTemplate.stream(query, MetaData.class, type)) {
+                batches(metaDataStream, metaData -> {
+                    ids.add(metaData.getId());
+                    Revision revision = metaData.getRevision();
+                    return new EntityChange(id(type, metaData.getId()), type, metaData.getId(),
+                        revision == null || revision.getCreated() == null ? Instant.now() : revision.getCreated(), false);
+                });
+            }
+            Query terminated = new Query(Criteria.where("revision.terminated").ne(null));
+            terminated.fields().include("revision.parentId").include("revision.terminated");
+            try (Stream<MetaData> revisions = mongoTemplate.stream(terminated, MetaData.class, type.concat(REVISION_POSTFIX))) {
+                //Restored entities and entities with more than one terminated revision are registered once
+                batches(revisions.filter(revision -> ids.add(revision.getRevision().getParentId())),
+                    revision -> new EntityChange(id(type, revision.getRevision().getParentId()), type,
+                        revision.getRevision().getParentId(), revision.getRevision().getTerminated(), true));
+            }
+        });
+        LOG.info("Rebuilt the entity changes with {} entities", mongoTemplate.count(new Query(), EntityChange.class));
+    }
+
+    private void batches(Stream<MetaData> metaDataStream, Function<MetaData, EntityChange> entityChange) {
+        List<EntityChange> batch = new ArrayList<>();
+        metaDataStream.forEach(metaData -> {
+            batch.add(entityChange.apply(metaData));
+            if (batch.size() == BATCH_SIZE) {
+                mongoTemplate.insertAll(batch);
+                batch.clear();
+            }
+        });
+        mongoTemplate.insertAll(batch);
+    }
+
+    private void register(String type, Collection<String> ids, boolean deleted, Instant modified) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, EntityChange.class);
+        ids.forEach(id -> bulkOperations.upsert(Query.query(Criteria.where("_id").is(id(type, id))), new Update()
+            .set("type", type)
+            .set("metaDataId", id)
+            .set("modified", modified)
+            .set("deleted", deleted)));
+        bulkOperations.execute();
+    }
+
+    private List<String> metaDataIds(String type, Instant since, boolean deleted) {
+        Query query = Query.query(Criteria.where("type").is(type).and("modified").gte(since).and("deleted").is(deleted));
+        query.fields().include("metaDataId");
+        return mongoTemplate.find(query, EntityChange.class).stream()
+            .map(EntityChange::getMetaDataId)
+            .collect(toList());
+    }
+
+    private static String id(String type, String metaDataId) {
+        return type + "/" + metaDataId;
+    }
+
+    private static boolean isEntityType(String type) {
+        return Stream.of(EntityType.values()).anyMatch(entityType -> entityType.getType().equals(type));
+    }
+}
@@ -2,11 +2,14 @@ package manage.repository;
 
 import lombok.Getter;
 import manage.conf.MetaDataAutoConfiguration;
+import manage.exception.InvalidSearchException;
 import manage.exception.ValueNotUniqueException;
+import manage.model.AutoCompleteEntry;
 import manage.model.EntityType;
 import manage.model.MetaData;
 import manage.model.MetaDataChangeRequest;
-import manage.model.StatsEntry;
+import manage.model.SearchPage;
+import manage.model.SearchPagination;
 import manage.mongo.Sequence;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,15 +21,16 @@ import org.springframework.data.mongodb.core.query.*;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
 import static manage.mongo.MongoChangelog.CHANGE_REQUEST_POSTFIX;
-import static manage.mongo.MongoChangelog.REVISION_POSTFIX;
 
 /**
  * We can't use the Spring JPA repositories as we at runtime need to decide which collection to use. We only have one
@@ -39,6 +43,8 @@ public class MetaDataRepository {
 
     private static final String FIELD_NOT_UNIQUE_MESSAGE = "A %s with the value %s for field %s already exists.";
 
+    private static final Pattern FIELD_NAME = Pattern.compile("[A-Za-z_][\\w:@.-]*");
+
     @Getter
     private final MongoTemplate mongoTemplate;
     private final List<String> supportedLanguages;
@@ -47,13 +53,36 @@ public class MetaDataRepository {
 
     private final MetaDataAutoConfiguration metaDataAutoConfiguration;
 
+    @Getter
+    private final AutoCompleteIndex autoCompleteIndex;
+
+    @Getter
+    private final ActivityLog activityLog;
+
+    @Getter
+    private final EntityChanges entityChanges;
+
+    private final PolicyEnforcementIndex policyEnforcementIndex;
+
+    private final int maxSearchResults;
+
     @Autowired
     public MetaDataRepository(MongoTemplate mongoTemplate,
                               @Value("${product.supported_languages}") String supportedLanguages,
-                              MetaDataAutoConfiguration metaDataAutoConfiguration) {
+                              MetaDataAutoConfiguration metaDataAutoConfiguration,
+                              AutoCompleteIndex autoCompleteIndex,
+                              ActivityLog activityLog,
+                              EntityChanges entityChanges,
+                              PolicyEnforcementIndex policyEnforcementIndex,
+                              @Value("${search.max_results}") int maxSearchResults) {
         this.mongoTemplate = mongoTemplate;
         this.supportedLanguages = Stream.of(supportedLanguages.split(",")).map(String::trim).collect(toList());
         this.metaDataAutoConfiguration = metaDataAutoConfiguration;
+        this.autoCompleteIndex = autoCompleteIndex;
+        this.activityLog = activityLog;
+        this.entityChanges = entityChanges;
+        this.policyEnforcementIndex = policyEnforcementIndex;
+        this.maxSearchResults = maxSearchResults;
     }
 
     public MetaData findById(String id, String type) {
@@ -70,9 +99,22 @@ public class MetaDataRepository {
             mongoTemplate.findAll(MetaData.class, EntityType.RP.getType()).stream()).toList();
     }
 
+    /**
+     * The caller must close the stream, which holds the Mongo cursors
+     */
+    public Stream<MetaData> streamAllEntities() {
+        return Stream.concat(
+            mongoTemplate.stream(new Query(), MetaData.class, EntityType.SP.getType()),
+            mongoTemplate.stream(new Query(), MetaData.class, EntityType.RP.getType()));
+    }
+
     public MetaData save(MetaData metaData) {
         metaData.trimSpaces();
         mongoTemplate.insert(metaData, metaData.getType());
+        autoCompleteIndex.index(metaData);
+        activityLog.log(metaData);
+        entityChanges.saved(metaData);
+        policyEnforcementIndex.update(metaData);
         return metaData;
     }
 
@@ -86,6 +128,25 @@ public class MetaDataRepository {
 
     public void remove(MetaData metaData) {
         mongoTemplate.remove(metaData, metaData.getType());
+        autoCompleteIndex.remove(metaData);
+        activityLog.remove(metaData);
+        entityChanges.removed(metaData);
+        policyEnforcementIndex.remove(metaData);
+    }
+
+    public void removeAll(String type) {
+        Query ids = new Query();
+        ids.fields().include("_id");
+        List<String> removed = mongoTemplate.find(ids, MetaData.class, type).stream()
+            .map(MetaData::getId)
+            .collect(toList());
+        mongoTemplate.remove(new Query(), type);
+        autoCompleteIndex.removeAll(type);
+        activityLog.removeAll(type);
+        entityChanges.removedAll(type, removed);
+        if (EntityType.PDP.getType().equals(type)) {
+            policyEnforcementIndex.rebuild();
+        }
     }
 
     public List<MetaData> revisions(String type, String parentId) {
@@ -102,6 +163,36 @@ public class MetaDataRepository {
         return Optional.ofNullable(mongoTemplate.findOne(query, MetaData.class, type));
     }
 
+    /**
+     * The MetaData saved since the moment with only the fields, based on the entity changes of all the writes of this
+     * repository
+     */
+    public List<MetaData> changedSince(String type, Instant since, String... fields) {
+        List<String> ids = entityChanges.changedSince(type, since);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Query query = new Query(Criteria.where("_id").in(ids));
+        query.fields().include(fields);
+        return mongoTemplate.find(query, MetaData.class, type);
+    }
+
+    public List<String> terminatedSince(String type, Instant since) {
+        return entityChanges.deletedSince(type, since);
+    }
+
+    public boolean hasChangesSince(String type, Instant since) {
+        return entityChanges.hasChangesSince(type, since);
+    }
+
+    public List<String> entityIds(String type) {
+        Query query = new Query();
+        query.fields().include("data.entityid");
+        return mongoTemplate.find(query, MetaData.class, type).stream()
+            .map(metaData -> (String) metaData.getData().get("entityid"))
+            .collect(toList());
+    }
+
     public List<MetaDataChangeRequest> changeRequests(String metaDataId, String collectionName) {
         Query query = new Query(Criteria.where("metaDataId").is(metaDataId));
         return mongoTemplate.find(query, MetaDataChangeRequest.class, collectionName);
@@ -115,18 +206,14 @@ public class MetaDataRepository {
         return results;
     }
 
-    public long openChangeRequests() {
-        AtomicLong count = new AtomicLong(0);
-        Query query = new Query();
-        Stream.of(EntityType.values()).forEach(entityType -> {
-            count.addAndGet(mongoTemplate.count(query, entityType.getType().concat(CHANGE_REQUEST_POSTFIX)));
-        });
-        return count.get();
-    }
 
     public void update(MetaData metaData) {
         metaData.trimSpaces();
         mongoTemplate.save(metaData, metaData.getType());
+        autoCompleteIndex.index(metaData);
+        activityLog.log(metaData);
+        entityChanges.saved(metaData);
+        policyEnforcementIndex.update(metaData);
     }
 
     public List<Map> autoComplete(String type, String search) {
@@ -134,33 +221,22 @@ public class MetaDataRepository {
         if ("*".equals(search)) {
             return mongoTemplate.find(query, Map.class, type);
         }
-        String escapedSearch = escapeSpecialChars(search);
-        query.limit(AUTOCOMPLETE_LIMIT);
-        Criteria criteria = new Criteria();
-
-        List<String> parts = Arrays.asList(escapedSearch.split(" "));
-        criteria.andOperator(parts.stream().map(part -> {
-            List<Criteria> orCriterias = new ArrayList<>();
-            orCriterias.add(regex("data.entityid", part));
-            if (EntityType.PDP.getType().equals(type)) {
-                orCriterias.add(regex("data.name", part));
-                orCriterias.add(regex("data.description", part));
-            } else if (EntityType.ORG.getType().equals(type)) {
-                orCriterias.add(regex("data.name", part));
-                orCriterias.add(regex("data.kvkNumber", part));
-                orCriterias.add(regex("data.notes", part));
-            } else {
-                this.supportedLanguages.forEach(lang -> {
-                    orCriterias.add(regex("data.metaDataFields.name:" + lang, part));
-                    orCriterias.add(regex("data.metaDataFields.discoveryName:" + lang, part));
-                    orCriterias.add(regex("data.metaDataFields.displayName:" + lang, part));
-                    orCriterias.add(regex("data.metaDataFields.keywords:0:" + lang, part));
-                    orCriterias.add(regex("data.metaDataFields.OrganizationName:" + lang, part));
-                });
-            }
-            return new Criteria().orOperator(orCriterias.toArray(new Criteria[orCriterias.size()]));
-        }).toArray(Criteria[]::new));
-        query.addCriteria(criteria);
+        List<Criteria> criteria = new ArrayList<>();
+        criteria.add(Criteria.where("type").is(type));
+        Stream.of(search.split(" "))
+            .map(AutoCompleteIndex::normalize)
+            .filter(StringUtils::hasText)
+            .forEach(part -> criteria.add(autoCompleteIndex.criteria(part, escapeSpecialChars(part))));
+        Query autoCompleteQuery = new Query(new Criteria().andOperator(criteria));
+        autoCompleteQuery.fields().include("metaDataId");
+        autoCompleteQuery.limit(AUTOCOMPLETE_LIMIT);
+        List<String> ids = mongoTemplate.find(autoCompleteQuery, AutoCompleteEntry.class).stream()
+            .map(AutoCompleteEntry::getMetaDataId)
+            .toList();
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        query.addCriteria(Criteria.where("_id").in(ids));
         return mongoTemplate.find(query, Map.class, type);
     }
 
@@ -177,7 +253,15 @@ public class MetaDataRepository {
 
     public long deleteAllImportedServiceProviders() {
         Query query = new Query(Criteria.where("data.metaDataFields.coin:imported_from_edugain").is(true));
-        return mongoTemplate.remove(query, EntityType.SP.getType()).getDeletedCount();
+        query.fields().include("_id");
+        List<String> ids = mongoTemplate.find(query, MetaData.class, EntityType.SP.getType()).stream()
+            .map(MetaData::getId)
+            .collect(toList());
+        long deleted = mongoTemplate.remove(query, EntityType.SP.getType()).getDeletedCount();
+        autoCompleteIndex.removeAll(EntityType.SP.getType(), ids);
+        activityLog.removeAll(EntityType.SP.getType(), ids);
+        entityChanges.removedAll(EntityType.SP.getType(), ids);
+        return deleted;
     }
 
     public long countAllImportedServiceProviders() {
@@ -190,15 +274,6 @@ public class MetaDataRepository {
         return query.replaceAll("([\\Q\\/$^.?*+{}()|[]\\E])", "\\\\$1");
     }
 
-    private Criteria regex(String key, String search) {
-        try {
-            return Criteria.where(key).regex(".*" + search + ".*", "i");
-        } catch (IllegalArgumentException e) {
-            //ignore
-            return Criteria.where("nope").exists(true);
-        }
-    }
-
     private String escapeMetaDataField(String key) {
         if (key.startsWith("metaDataFields")) {
             return "metaDataFields." + key.substring("metaDataFields.".length())
@@ -234,6 +309,39 @@ public class MetaDataRepository {
     }
 
     public List<Map> search(String type, Map<String, Object> properties, List<String> requestedAttributes, Boolean
+        allAttributes, Boolean logicalOperatorIsAnd) {
+        return mongoTemplate.find(searchQuery(type, properties, requestedAttributes, allAttributes, logicalOperatorIsAnd),
+            Map.class, type);
+    }
+
+    public SearchPage<Map> search(String type, Map<String, Object> properties, List<String> requestedAttributes, Boolean
+        allAttributes, Boolean logicalOperatorIsAnd, SearchPagination pagination) {
+        Query query = searchQuery(type, properties, requestedAttributes, allAttributes, logicalOperatorIsAnd);
+        return page(query, type, pagination, document -> document);
+    }
+
+    /**
+     * The caller must close the stream, which holds the Mongo cursor
+     */
+    public Stream<Map> streamSearch(String type, Map<String, Object> properties, List<String> requestedAttributes,
+                                    Boolean allAttributes, Boolean logicalOperatorIsAnd) {
+        return mongoTemplate.stream(searchQuery(type, properties, requestedAttributes, allAttributes, logicalOperatorIsAnd),
+            Map.class, type);
+    }
+
+    /**
+     * The caller must close the stream, which holds the Mongo cursor
+     */
+    public Stream<MetaData> streamRaw(String type, String query) {
+        return mongoTemplate.stream(new BasicQuery(query), MetaData.class, type);
+    }
+
+    public SearchPage<MetaData> rawSearch(String type, String query, SearchPagination pagination) {
+        return page(new BasicQuery(query), type, pagination,
+            document -> mongoTemplate.getConverter().read(MetaData.class, document));
+    }
+
+    private Query searchQuery(String type, Map<String, Object> properties, List<String> requestedAttributes, Boolean
         allAttributes, Boolean logicalOperatorIsAnd) {
         EntityType entityType = EntityType.fromType(type.replaceAll("_revision", ""));
         Query query = allAttributes ? new Query() : queryWithSamlFields(entityType);
@@ -286,7 +394,134 @@ public class MetaDataRepository {
         } else {
             query.addCriteria(new Criteria().orOperator(criteria));
         }
-        return mongoTemplate.find(query, Map.class, type);
+        return query;
+    }
+
+    /*
+     * Keyset pagination on the sort key and _id, the continuation token holds the sort key and _id of the last result.
+     * Only a paginated search - with a limit or a continuation token - is capped by search.max_results, a search
+     * without pagination parameters returns all results.
+     */
+    private <T> SearchPage<T> page(Query query, String type, SearchPagination pagination, Function<Document, T> mapper) {
+        String sortKey = pagination.sortKey();
+        if (!FIELD_NAME.matcher(sortKey).matches()) {
+            throw new InvalidSearchException(String.format("Invalid sort %s", pagination.sort()));
+        }
+        boolean descending = pagination.descending();
+        boolean paginated = (pagination.limit() != null && pagination.limit() > 0) ||
+            StringUtils.hasText(pagination.continuationToken());
+        int limit = pagination.limit() == null || pagination.limit() <= 0 ?
+            maxSearchResults : Math.min(pagination.limit(), maxSearchResults);
+        Document filter = query.getQueryObject();
+        Long totalCount = pagination.count() ? mongoTemplate.count(new BasicQuery(filter), type) : null;
+        if (StringUtils.hasText(pagination.continuationToken())) {
+            Document cursor = cursor(decodeContinuationToken(pagination.continuationToken(), sortKey, descending));
+            filter = filter.isEmpty() ? cursor : new Document("$and", List.of(filter, cursor));
+        }
+        Document projection = query.getFieldsObject();
+        Document fields = new Document(projection);
+        //The continuation token needs the sort key and _id, which are removed again from the results if not projected
+        List<String> addedFields = paginated && !projection.isEmpty() ?
+            Stream.of(sortKey, "_id").distinct().filter(field -> !projects(projection, field)).toList() : List.of();
+        addedFields.forEach(field -> fields.put(field, 1));
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Query pageQuery = new BasicQuery(filter, fields)
+            .with(sortKey.equals("_id") ? Sort.by(direction, "_id") : Sort.by(direction, sortKey, "_id"));
+        if (paginated) {
+            pageQuery.limit(limit + 1);
+        }
+        List<Document> documents = mongoTemplate.find(pageQuery, Document.class, type);
+        String continuationToken = null;
+        if (paginated && documents.size() > limit) {
+            documents = documents.subList(0, limit);
+            Document last = documents.get(limit - 1);
+            continuationToken = encodeContinuationToken(value(last, sortKey), last.get("_id"), sortKey, descending);
+        }
+        documents.forEach(document -> addedFields.forEach(field -> removePath(document, "", field, projection)));
+        return new SearchPage<>(documents.stream().map(mapper).collect(toList()), continuationToken, totalCount);
+    }
+
+    private static boolean projects(Document fields, String path) {
+        if (path.equals("_id")) {
+            Object id = fields.get("_id");
+            return !((id instanceof Number number && number.intValue() == 0) || Boolean.FALSE.equals(id));
+        }
+        return fields.keySet().stream().anyMatch(field -> path.equals(field) || path.startsWith(field + "."));
+    }
+
+    /*
+     * Removes the path and the parents it leaves empty, unless another projected field lives under the parent
+     */
+    private static void removePath(Map<String, Object> document, String prefix, String path, Document fields) {
+        int dot = path.indexOf('.');
+        if (dot < 0) {
+            document.remove(path);
+            return;
+        }
+        String parent = path.substring(0, dot);
+        String parentPath = prefix + parent;
+        if (document.get(parent) instanceof Map<?, ?> map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> child = (Map<String, Object>) map;
+            removePath(child, parentPath + ".", path.substring(dot + 1), fields);
+            if (child.isEmpty() && fields.keySet().stream().noneMatch(field -> field.startsWith(parentPath + "."))) {
+                document.remove(parent);
+            }
+        }
+    }
+
+    private Document cursor(Document token) {
+        String sortKey = token.getString("sort");
+        boolean descending = token.getBoolean("descending");
+        Object value = token.get("value");
+        Object id = token.get("id");
+        String comparison = descending ? "$lt" : "$gt";
+        if (sortKey.equals("_id")) {
+            return new Document("_id", new Document(comparison, id));
+        }
+        //Missing values sort first in an ascending and last in a descending sort
+        Document sameValue = new Document(sortKey, value).append("_id", new Document(comparison, id));
+        if (value == null) {
+            return descending ? sameValue :
+                new Document("$or", List.of(sameValue, new Document(sortKey, new Document("$ne", null))));
+        }
+        List<Document> or = new ArrayList<>(List.of(new Document(sortKey, new Document(comparison, value)), sameValue));
+        if (descending) {
+            or.add(new Document(sortKey, null));
+        }
+        return new Document("$or", or);
+    }
+
+    private String encodeContinuationToken(Object value, Object id, String sortKey, boolean descending) {
+        Document token = new Document("sort", sortKey)
+            .append("descending", descending)
+            .append("value", value)
+            .append("id", id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Document decodeContinuationToken(String continuationToken, String sortKey, boolean descending) {
+        Document token;
+        try {
+            token = Document.parse(new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new InvalidSearchException("Invalid continuationToken");
+        }
+        if (!sortKey.equals(token.get("sort")) || !Boolean.valueOf(descending).equals(token.get("descending"))) {
+            throw new InvalidSearchException("The continuationToken belongs to a search with a different sort");
+        }
+        return token;
+    }
+
+    private static Object value(Document document, String path) {
+        Object value = document;
+        for (String part : path.split("\\.")) {
+            if (!(value instanceof Map<?, ?> map)) {
+                return null;
+            }
+            value = map.get(part);
+        }
+        return value;
     }
 
     private boolean isNumeric(String value) {
@@ -304,78 +539,78 @@ public class MetaDataRepository {
         return mongoTemplate.find(query, Map.class, type);
     }
 
-    public List<Map> findInstitutionByIdentifier(String identifier) {
-        Document document = new Document("data.identifier", identifier);
-        Query query = new BasicQuery(document).collation(Collation.of("en").strength(2));
-        query.fields().include("_id");
-        return mongoTemplate.find(query, Map.class, EntityType.STEPUP.getType());
+    public boolean entityIdExists(String type, String entityId) {
+        if (entityId == null) {
+            return false;
+        }
+        Query query = entityIdQuery(Criteria.where("data.entityid").is(entityId));
+        return mongoTemplate.find(query, MetaData.class, type).stream()
+            .anyMatch(metaData -> entityId.equals(metaData.getData().get("entityid")));
+    }
+
+    /**
+     * The entityIDs that exist in one of the collections of the types, resolved with one query per collection
+     */
+    public Set<String> existingEntityIds(Collection<String> types, Collection<String> entityIds) {
+        Set<String> existing = new HashSet<>();
+        Set<String> unresolved = new HashSet<>();
+        entityIds.stream().filter(Objects::nonNull).forEach(unresolved::add);
+        for (String type : types) {
+            if (unresolved.isEmpty()) {
+                break;
+            }
+            Query query = entityIdQuery(Criteria.where("data.entityid").in(unresolved));
+            mongoTemplate.find(query, MetaData.class, type).forEach(metaData -> {
+                Object entityId = metaData.getData().get("entityid");
+                if (unresolved.remove(entityId)) {
+                    existing.add((String) entityId);
+                }
+            });
+        }
+        return existing;
     }
 
-    public List<MetaData> recentActivity(List<EntityType> types, int max) {
-        max = Math.min(max, 100);
-        Query query = new Query()
-            .with(Sort.by(Sort.Order.desc("revision.created")))
-            .limit(max);
-        applyRecentActivityFields(query.fields());
+    public boolean institutionGuidExists(String type, String institutionGuid) {
+        return institutionGuid != null &&
+            mongoTemplate.exists(Query.query(Criteria.where("data.metaDataFields.coin:institution_guid").is(institutionGuid)), type);
+    }
 
-        List<MetaData> metaData = types.stream()
-            .map(entityType -> mongoTemplate.find(query, MetaData.class, entityType.getType()))
-            .flatMap(List::stream)
-            .collect(toList());
-        List<MetaData> metaDataResult = metaData.stream()
-            .sorted(Comparator.comparing(md -> md.getRevision().getCreated(), Comparator.reverseOrder()))
-            .collect(toList()).subList(0, Math.min(max, metaData.size()));
-
-        // Using only the parentId's of the trimmed collection makes the sorting more efficient.
-        // This is to catch multiple revisions in a row.
-        List<String> parentIdsWithPossibleRevisions = metaDataResult.stream().map(MetaData::getId).collect(toList());
-        Query revisionQuery = new Query(Criteria.where("revision.parentId").in(parentIdsWithPossibleRevisions))
-            .with(Sort.by(Sort.Order.desc("revision.created")));
-        applyRecentActivityFields(revisionQuery.fields());
-        final List<MetaData> metaDataRevisions = types.stream()
-            .flatMap(entityType -> mongoTemplate.find(revisionQuery, MetaData.class, entityType.getType().concat(REVISION_POSTFIX)).stream())
-            .toList();
-        metaDataResult.addAll(metaDataRevisions);
-
-        // Detect deleted items
-        Instant firstActivity = metaDataResult.get(metaDataResult.size() - 1).getRevision().getCreated(); // isnt this the last activity "oldestActivity"
-        query.addCriteria(Criteria.where("revision.terminated").gte(firstActivity));
-        List<MetaData> removedMetaDataItems = types.stream()
-            .map(entityType -> mongoTemplate.find(query, MetaData.class, entityType.getType().concat(REVISION_POSTFIX)))
-            .flatMap(List::stream)
-            .map(this::updateCreatedRevision)
-            .toList();
-        metaDataResult.addAll(removedMetaDataItems);
-        if (!removedMetaDataItems.isEmpty() || !metaDataRevisions.isEmpty()) {
-            // Need to re-sort and cut off again due to added items
-            metaDataResult = metaDataResult.stream()
-                .sorted(Comparator.comparing(md -> md.getRevision().getCreated(), Comparator.reverseOrder()))
-                .collect(toList()).subList(0, Math.min(max, metaDataResult.size()));
-        }
+    /*
+     * The only index on data.entityid is the unique case-insensitive one, which is only used by queries with the same
+     * collation. The callers keep the exact matches.
+     */
+    private Query entityIdQuery(Criteria criteria) {
+        Query query = Query.query(criteria).collation(Collation.of("en").strength(2));
+        query.fields().include("data.entityid");
+        return query;
+    }
 
-        return metaDataResult;
+    public boolean exists(String id, String type) {
+        return mongoTemplate.exists(Query.query(Criteria.where("_id").is(id)), type);
     }
 
-    private MetaData updateCreatedRevision(MetaData metaData) {
-        metaData.getRevision().markCreatedWithTerminatedInstant();
-        return metaData;
+    /**
+     * Whether a MetaData of one of the types has the value for the field, which is relative to data. Backed by the
+     * sparse indexes on the fields that are checked, see the IndexReconciler.
+     */
+    public boolean existsByField(Collection<String> types, String field, Object value) {
+        if (!FIELD_NAME.matcher(field).matches()) {
+            throw new InvalidSearchException(String.format("Invalid field %s", field));
+        }
+        Query query = Query.query(Criteria.where("data." + field).is(value));
+        return value != null && types.stream().anyMatch(type -> mongoTemplate.exists(query, type));
     }
 
-    private void applyRecentActivityFields(Field fields) {
-        fields
-            .include("type")
-            .include("version")
-            .include("data.state")
-            .include("data.entityid")
-            .include("data.name")
-            .include("data.metaDataFields.name:en")
-            .include("data.metaDataFields.OrganizationName:en")
-            .include("data.revisionnote")
-            .include("revision.number")
-            .include("revision.created")
-            .include("revision.terminated")
-            .include("revision.parentId")
-            .include("revision.updatedBy");
+
+    public List<Map> findInstitutionByIdentifier(String identifier) {
+        Document document = new Document("data.identifier", identifier);
+        Query query = new BasicQuery(document).collation(Collation.of("en").strength(2));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Map.class, EntityType.STEPUP.getType());
+    }
+
+    public List<MetaData> recentActivity(List<EntityType> types, int max) {
+        return activityLog.recentActivity(types.stream().map(EntityType::getType).collect(toList()), max);
     }
 
     public List<Map> whiteListing(String type, String state) {
@@ -394,7 +629,7 @@ public class MetaDataRepository {
     }
 
     public void validateFieldUnique(String type, String fieldName, Object value) {
-        if (findAllByType(type).stream().anyMatch(m -> m.getData().get(fieldName).equals(value))) {
+        if (existsByField(List.of(type), fieldName, value)) {
             throw new ValueNotUniqueException(String.format(FIELD_NOT_UNIQUE_MESSAGE, type, value, fieldName));
         }
     }
@@ -460,12 +695,6 @@ public class MetaDataRepository {
         return res.getValue();
     }
 
-    public List<StatsEntry> stats() {
-        return mongoTemplate.getCollectionNames().stream()
-            .filter(name -> !name.toLowerCase().contains("system"))
-            .map(name -> new StatsEntry(name, mongoTemplate.count(new Query(), name)))
-            .collect(toList());
-    }
 
     private Query queryWithSamlFields(EntityType entityType) {
         Query query = new Query();
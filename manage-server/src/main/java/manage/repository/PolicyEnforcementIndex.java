@@ -0,0 +1,89 @@
+package manage.repository;
+
+import manage.model.EntityType;
+import manage.model.MetaData;
+import manage.model.PolicyEnforcement;
+import manage.policies.PdpPolicyDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the policy_enforcement collection in line with the PDP collection. The collection holds the entityIDs for
+ * which EngineBlock must require a policy enforcement decision, with one document per active policy with the service
+ * providers of a SP policy or the identity providers of an IdP policy. It is written through on every save and delete
+ * of a policy - also when a hook rewrites the entityIDs of a policy - so the push does not read and parse all policies.
+ */
+@Component
+public class PolicyEnforcementIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PolicyEnforcementIndex.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public PolicyEnforcementIndex(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public EnforcedProviders enforcedProviders() {
+        return new EnforcedProviders(
+            distinct("serviceProviderIds"),
+            distinct("identityProviderIds")
+        );
+    }
+
+    public void update(MetaData metaData) {
+        if (!EntityType.PDP.getType().equals(metaData.getType())) {
+            return;
+        }
+        PdpPolicyDefinition policy = new PdpPolicyDefinition(metaData);
+        if (policy.isActive()) {
+            mongoTemplate.save(policyEnforcement(policy));
+        } else {
+            remove(metaData);
+        }
+    }
+
+    public void remove(MetaData metaData) {
+        if (EntityType.PDP.getType().equals(metaData.getType())) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(metaData.getId())), PolicyEnforcement.class);
+        }
+    }
+
+    /*
+     * Needed when policies are changed without the MetaDataRepository, e.g. by a migration or a direct database import
+     */
+    public void rebuild() {
+        List<PolicyEnforcement> policyEnforcements = mongoTemplate.findAll(MetaData.class, EntityType.PDP.getType())
+            .stream()
+            .map(PdpPolicyDefinition::new)
+            .filter(PdpPolicyDefinition::isActive)
+            .map(this::policyEnforcement)
+            .toList();
+        mongoTemplate.remove(new Query(), PolicyEnforcement.class);
+        mongoTemplate.insertAll(policyEnforcements);
+        LOG.info("Rebuilt policy enforcement index with {} active policies", policyEnforcements.size());
+    }
+
+    private PolicyEnforcement policyEnforcement(PdpPolicyDefinition policy) {
+        boolean idpPolicy = policy.isIdpPolicy();
+        return new PolicyEnforcement(
+            policy.getId(),
+            idpPolicy ? List.of() : policy.getServiceProviderIds(),
+            idpPolicy ? policy.getIdentityProviderIds() : List.of());
+    }
+
+    private Set<String> distinct(String field) {
+        return new HashSet<>(mongoTemplate.findDistinct(new Query(), field, PolicyEnforcement.class, String.class));
+    }
+
+    public record EnforcedProviders(Set<String> serviceProviderIds, Set<String> identityProviderIds) {
+    }
+}
@@ -7,7 +7,6 @@ import manage.api.APIUser;
 import manage.api.AbstractUser;
 import manage.api.Scope;
 import manage.conf.MetaDataAutoConfiguration;
-import manage.control.DatabaseController;
 import manage.exception.CustomValidationException;
 import manage.exception.EndpointNotAllowed;
 import manage.exception.ResourceNotFoundException;
@@ -15,6 +14,8 @@ import manage.format.SaveURLResource;
 import manage.hook.MetaDataHook;
 import manage.model.*;
 import manage.repository.MetaDataRepository;
+import manage.service.push.EngineBlockConnectionCache;
+import manage.service.push.PushScheduler;
 import manage.shibboleth.FederatedUser;
 import org.everit.json.schema.ValidationException;
 import org.slf4j.Logger;
@@ -41,6 +42,7 @@ import java.net.URLDecoder;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
@@ -72,7 +74,7 @@ public class MetaDataService {
 
     private final MetaDataHook metaDataHook;
 
-    private final DatabaseController databaseController;
+    private final PushScheduler pushScheduler;
 
     private final Environment environment;
 
@@ -80,23 +82,27 @@ public class MetaDataService {
 
     private final ExporterService exporterService;
 
+    private final EngineBlockConnectionCache engineBlockConnectionCache;
+
     @Value("${environment}")
     private final String environmentType;
 
     public MetaDataService(MetaDataRepository metaDataRepository,
                            MetaDataAutoConfiguration metaDataAutoConfiguration,
                            MetaDataHook metaDataHook,
-                           DatabaseController databaseController,
+                           PushScheduler pushScheduler,
                            ImporterService importerService,
                            ExporterService exporterService,
+                           EngineBlockConnectionCache engineBlockConnectionCache,
                            Environment environment,
                            @Value("${environment}") String environmentType) {
 
         this.metaDataRepository = metaDataRepository;
         this.metaDataAutoConfiguration = metaDataAutoConfiguration;
         this.metaDataHook = metaDataHook;
-        this.databaseController = databaseController;
+        this.pushScheduler = pushScheduler;
         this.exporterService = exporterService;
+        this.engineBlockConnectionCache = engineBlockConnectionCache;
         this.environment = environment;
         this.importerService = importerService;
         this.environmentType = environmentType.toLowerCase();
@@ -203,6 +209,7 @@ public class MetaDataService {
         LOG.info("Saving new metaData {} by {}", metaData.getId(), user.getName());
 
         metaDataRepository.save(metaData);
+        engineBlockConnectionCache.invalidate(metaData.getId());
 
         return getMetaDataAndValidate(metaData.getType(), metaData.getId());
     }
@@ -213,6 +220,7 @@ public class MetaDataService {
         //For security enforcement see the SecurityHook#preDelete
         current = metaDataHook.preDelete(current, user);
         metaDataRepository.remove(current);
+        engineBlockConnectionCache.invalidate(current.getId());
 
         LOG.info("Deleted metaData {} by {}", current.getId(), user.getName());
 
@@ -250,6 +258,7 @@ public class MetaDataService {
 
         metaData.promoteToLatest(user.getName(), (String) metaData.getData().get("revisionnote"));
         metaDataRepository.update(metaData);
+        engineBlockConnectionCache.invalidate(metaData.getId());
 
         LOG.info("Updated metaData {} by {}", metaData.getId(), user.getName());
 
@@ -307,6 +316,7 @@ public class MetaDataService {
         if (somethingChanged || forceNewRevision) {
             metaDataRepository.save(previous);
             metaDataRepository.update(metaData);
+            engineBlockConnectionCache.invalidate(metaData.getId());
 
             LOG.info("Merging new metaData {} by {}", metaData.getId(), user.getName());
 
@@ -452,6 +462,28 @@ public class MetaDataService {
     }
 
     public List<Map> searchEntityByType(String type, Map<String, Object> properties, boolean nested) {
+        List<Map> search = search(properties, (requestedAttributes, allAttributes, logicalOperatorIsAnd) ->
+            metaDataRepository.search(type, properties, requestedAttributes, allAttributes, logicalOperatorIsAnd));
+        return nested ? search.stream().map(m -> exporterService.nestMetaData(m, type)).collect(toList()) : search;
+    }
+
+    public SearchPage<Map> searchEntityByType(String type, Map<String, Object> properties, boolean nested,
+                                              SearchPagination pagination) {
+        SearchPage<Map> search = search(properties, (requestedAttributes, allAttributes, logicalOperatorIsAnd) ->
+            metaDataRepository.search(type, properties, requestedAttributes, allAttributes, logicalOperatorIsAnd, pagination));
+        return nested ? search.map(m -> exporterService.nestMetaData(m, type)) : search;
+    }
+
+    /**
+     * The caller must close the stream, which holds the Mongo cursor
+     */
+    public Stream<Map> streamEntitiesByType(String type, Map<String, Object> properties, boolean nested) {
+        Stream<Map> search = search(properties, (requestedAttributes, allAttributes, logicalOperatorIsAnd) ->
+            metaDataRepository.streamSearch(type, properties, requestedAttributes, allAttributes, logicalOperatorIsAnd));
+        return nested ? search.map(m -> exporterService.nestMetaData(m, type)) : search;
+    }
+
+    private <T> T search(Map<String, Object> properties, SearchFunction<T> searchFunction) {
         List requestedAttributes = (List) properties.getOrDefault(REQUESTED_ATTRIBUTES, new
             ArrayList<String>());
         Boolean allAttributes = (Boolean) properties.getOrDefault(ALL_ATTRIBUTES, false);
@@ -459,16 +491,35 @@ public class MetaDataService {
         properties.remove(REQUESTED_ATTRIBUTES);
         properties.remove(ALL_ATTRIBUTES);
         properties.remove(LOGICAL_OPERATOR_IS_AND);
-        List<Map> search = metaDataRepository.search(type, properties, requestedAttributes, allAttributes,
-            logicalOperatorIsAnd);
-        return nested ? search.stream().map(m -> exporterService.nestMetaData(m, type)).collect(toList()) : search;
+        return searchFunction.search(requestedAttributes, allAttributes, logicalOperatorIsAnd);
+    }
+
+    @FunctionalInterface
+    private interface SearchFunction<T> {
+        T search(List<String> requestedAttributes, Boolean allAttributes, Boolean logicalOperatorIsAnd);
     }
 
     public List<MetaData> retrieveRawSearch(String type, String query) throws UnsupportedEncodingException {
+        return metaDataRepository.findRaw(type, decodeRawQuery(query));
+    }
+
+    public SearchPage<MetaData> retrieveRawSearch(String type, String query, SearchPagination pagination)
+        throws UnsupportedEncodingException {
+        return metaDataRepository.rawSearch(type, decodeRawQuery(query), pagination);
+    }
+
+    /**
+     * The caller must close the stream, which holds the Mongo cursor
+     */
+    public Stream<MetaData> streamRawSearch(String type, String query) throws UnsupportedEncodingException {
+        return metaDataRepository.streamRaw(type, decodeRawQuery(query));
+    }
+
+    private String decodeRawQuery(String query) throws UnsupportedEncodingException {
         if (query.startsWith("%")) {
             query = URLDecoder.decode(query, "UTF-8");
         }
-        return metaDataRepository.findRaw(type, query);
+        return query;
     }
 
     public List<MetaData> retrieveRecentActivity(Map<String, Object> properties) {
@@ -518,7 +569,7 @@ public class MetaDataService {
         addAllowedEntity(sp, idpEntityId, connectionData, apiUser, false);
         addAllowedEntity(idp, spEntityId, connectionData, apiUser, true);
 
-        databaseController.doPush(new PushOptions(true, true, false, false));
+        pushScheduler.schedule(new PushOptions(true, true, false, false));
     }
 
     private void addAllowedEntity(MetaData metaData,
@@ -635,7 +686,7 @@ public class MetaDataService {
     }
 
     public void deleteCollection(EntityType entityType) {
-        this.metaDataRepository.getMongoTemplate().remove(new Query(), entityType.getType());
+        this.metaDataRepository.removeAll(entityType.getType());
     }
 
 }
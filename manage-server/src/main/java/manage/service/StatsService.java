@@ -0,0 +1,127 @@
+package manage.service;
+
+import manage.model.EntityType;
+import manage.model.StatsEntry;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static manage.mongo.MongoChangelog.CHANGE_REQUEST_POSTFIX;
+
+/**
+ * Counts with the estimated document count of the collection metadata instead of scanning the collections. The
+ * breakdowns per entity type are computed with one aggregation per type. Results are cached for cache_ttl_seconds.
+ */
+@Service
+public class StatsService {
+
+    private static final List<Object> TRUE_VALUES = List.of(true, "1");
+
+    private record Cached(Object value, Instant expires) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final Duration cacheTtl;
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+
+    public StatsService(MongoTemplate mongoTemplate,
+                        @Value("${stats.cache_ttl_seconds}") long cacheTtlSeconds) {
+        this.mongoTemplate = mongoTemplate;
+        this.cacheTtl = Duration.ofSeconds(cacheTtlSeconds);
+    }
+
+    public List<StatsEntry> collectionStats() {
+        return cached("collections", () -> mongoTemplate.getCollectionNames().stream()
+            .filter(name -> !name.toLowerCase().contains("system"))
+            .map(name -> new StatsEntry(name, estimatedCount(name)))
+            .collect(toList()));
+    }
+
+    public Map<String, Long> entityCounts(List<EntityType> entityTypes) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        entityTypes.forEach(entityType -> counts.put(entityType.getType(), estimatedCount(entityType.getType())));
+        return counts;
+    }
+
+    public long openChangeRequests() {
+        return Stream.of(EntityType.values())
+            .mapToLong(entityType -> estimatedCount(entityType.getType().concat(CHANGE_REQUEST_POSTFIX)))
+            .sum();
+    }
+
+    /**
+     * Per entity type the total, the count per state and the number of entities imported from eduGAIN and excluded
+     * from push
+     */
+    public Map<String, Map<String, Object>> breakdown() {
+        return cached("breakdown", () -> {
+            Map<String, Map<String, Object>> breakdown = new LinkedHashMap<>();
+            Stream.of(EntityType.values()).forEach(entityType -> breakdown.put(entityType.getType(), breakdown(entityType)));
+            return breakdown;
+        });
+    }
+
+    private Map<String, Object> breakdown(EntityType entityType) {
+        Document facets = new Document()
+            .append("total", List.of(new Document("$count", "count")))
+            .append("states", List.of(new Document("$group", new Document("_id", "$data.state")
+                .append("count", new Document("$sum", 1)))))
+            .append("importedFromEduGain", countWhereTrue("data.metaDataFields.coin:imported_from_edugain"))
+            .append("excludedFromPush", countWhereTrue("data.metaDataFields.coin:exclude_from_push"));
+        Document result = mongoTemplate.getCollection(entityType.getType())
+            .aggregate(List.of(new Document("$facet", facets)))
+            .first();
+        Map<String, Object> breakdown = new LinkedHashMap<>();
+        breakdown.put("total", count(result, "total"));
+        Map<String, Long> states = new LinkedHashMap<>();
+        if (result != null) {
+            result.getList("states", Document.class).forEach(state ->
+                states.put(Objects.toString(state.get("_id"), "-"), state.get("count", Number.class).longValue()));
+        }
+        breakdown.put("states", states);
+        breakdown.put("importedFromEduGain", count(result, "importedFromEduGain"));
+        breakdown.put("excludedFromPush", count(result, "excludedFromPush"));
+        return breakdown;
+    }
+
+    private static List<Document> countWhereTrue(String field) {
+        return List.of(
+            new Document("$match", new Document(field, new Document("$in", TRUE_VALUES))),
+            new Document("$count", "count"));
+    }
+
+    private static long count(Document result, String facet) {
+        if (result == null) {
+            return 0L;
+        }
+        List<Document> counts = result.getList(facet, Document.class);
+        return counts.isEmpty() ? 0L : counts.get(0).get("count", Number.class).longValue();
+    }
+
+    //Zero for collections that do not exist
+    private long estimatedCount(String collectionName) {
+        return mongoTemplate.getCollection(collectionName).estimatedDocumentCount();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(String key, Supplier<T> supplier) {
+        if (cacheTtl.isZero()) {
+            return supplier.get();
+        }
+        Instant now = Instant.now();
+        return (T) cache.compute(key, (k, cached) -> cached != null && cached.expires().isAfter(now) ?
+            cached : new Cached(supplier.get(), now.plus(cacheTtl))).value();
+    }
+}
@@ -6,8 +6,12 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.UUID;
@@ -18,7 +22,7 @@ public class ClusterLockService {
 
     private final MongoTemplate mongoTemplate;
     @Getter
-    private final String nodeId = UUID.randomUUID().toString();
+    private final String nodeId = hostName() + ":" + UUID.randomUUID();
 
     public ClusterLockService(MongoTemplate mongoTemplate) {
         this.mongoTemplate = mongoTemplate;
@@ -43,8 +47,17 @@ public class ClusterLockService {
      */
     public void release(String lockName) {
         mongoTemplate.remove(
-            mongoTemplate.findById(lockName, ClusterLock.class)
+            Query.query(Criteria.where("_id").is(lockName).and("ownerId").is(nodeId)),
+            ClusterLock.class
         );
     }
 
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+
 }
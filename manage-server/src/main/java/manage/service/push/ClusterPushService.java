@@ -0,0 +1,113 @@
+package manage.service.push;
+
+import lombok.SneakyThrows;
+import manage.model.PushOptions;
+import manage.model.PushRecord;
+import manage.service.jobs.ClusterLockService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Only one node in the cluster pushes at the same time. A node that finds a push in progress waits for it. When the
+ * push started after the request of the waiting node and pushed the same targets, the waiting node returns the
+ * result of that push instead of pushing the same snapshot again.
+ */
+@Service
+public class ClusterPushService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterPushService.class);
+
+    private static final String PUSH_LOCK = "push";
+
+    private final ClusterLockService lockService;
+    private final MongoTemplate mongoTemplate;
+    private final int lockTtlSeconds;
+    private final long pollMillis;
+
+    public ClusterPushService(ClusterLockService lockService,
+                              MongoTemplate mongoTemplate,
+                              @Value("${push.lock.ttl_seconds}") int lockTtlSeconds,
+                              @Value("${push.lock.poll_millis}") long pollMillis) {
+        this.lockService = lockService;
+        this.mongoTemplate = mongoTemplate;
+        this.lockTtlSeconds = lockTtlSeconds;
+        this.pollMillis = pollMillis;
+    }
+
+    @SneakyThrows
+    public ResponseEntity<Map> singleFlight(PushOptions pushOptions, Function<PushOptions, ResponseEntity<Map>> push) {
+        Instant requested = Instant.now();
+        List<String> targets = targets(pushOptions);
+        //The lock is removed by Mongo at the latest one TTL monitor run - 60 seconds - after it expired
+        Instant giveUp = requested.plusSeconds(lockTtlSeconds + 60L);
+        while (Instant.now().isBefore(giveUp)) {
+            Optional<PushRecord> joinable = Optional.ofNullable(mongoTemplate.findById(PushRecord.LAST_PUSH, PushRecord.class))
+                .filter(pushRecord -> pushRecord.getStarted().isAfter(requested) &&
+                    pushRecord.getTargets().containsAll(targets));
+            if (joinable.isPresent()) {
+                PushRecord pushRecord = joinable.get();
+                LOG.info("Joined push started at {} by node {}", pushRecord.getStarted(), pushRecord.getNodeId());
+                Map<String, Object> result = new HashMap<>(pushRecord.getResult());
+                result.put("node", pushRecord.getNodeId());
+                result.put("joined", true);
+                return new ResponseEntity<>(result, HttpStatus.OK);
+            }
+            if (lockService.tryAcquire(PUSH_LOCK, lockTtlSeconds)) {
+                try {
+                    return doPush(pushOptions, targets, push);
+                } finally {
+                    lockService.release(PUSH_LOCK);
+                }
+            }
+            LOG.debug("Push in progress on another node, waiting {} ms", pollMillis);
+            Thread.sleep(pollMillis);
+        }
+        String message = String.format("Push lock not released within %s seconds", lockTtlSeconds + 60L);
+        LOG.error(message);
+        return new ResponseEntity<>(Map.of("message", message), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private ResponseEntity<Map> doPush(PushOptions pushOptions,
+                                       List<String> targets,
+                                       Function<PushOptions, ResponseEntity<Map>> push) {
+        Instant started = Instant.now();
+        ResponseEntity<Map> response = push.apply(pushOptions);
+        Map<String, Object> result = new HashMap<>(response.getBody());
+        if (response.getStatusCode().is2xxSuccessful()) {
+            mongoTemplate.save(new PushRecord(PushRecord.LAST_PUSH, started, lockService.getNodeId(), targets, result));
+        }
+        result.put("node", lockService.getNodeId());
+        result.put("joined", false);
+        return new ResponseEntity<>(result, response.getStatusCode());
+    }
+
+    private List<String> targets(PushOptions pushOptions) {
+        List<String> targets = new ArrayList<>();
+        if (pushOptions.isIncludeEB()) {
+            targets.add("eb");
+        }
+        if (pushOptions.isIncludeOIDC()) {
+            targets.add("oidc");
+        }
+        if (pushOptions.isIncludePdP()) {
+            targets.add("pdp");
+        }
+        if (pushOptions.isIncludeStepUp()) {
+            targets.add("stepup");
+        }
+        return targets;
+    }
+}
@@ -0,0 +1,97 @@
+package manage.service.push;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import manage.model.MetaData;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache of the EngineBlock formatted connections keyed by the id and version of the MetaData. As the version is
+ * incremented on every save, an entry is stale once the version differs, also for saves done by other nodes.
+ * Local saves invalidate the entry immediately to free the memory. The hits, misses and size are registered as the
+ * manage.push.cache metrics.
+ */
+@Component
+@SuppressWarnings("unchecked")
+public class EngineBlockConnectionCache {
+
+    private final Map<String, CachedConnection> connections = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public EngineBlockConnectionCache(MeterRegistry meterRegistry) {
+        FunctionCounter.builder("manage.push.cache.hits", hits, AtomicLong::get)
+            .description("Formatted EngineBlock connections read from the cache")
+            .register(meterRegistry);
+        FunctionCounter.builder("manage.push.cache.misses", misses, AtomicLong::get)
+            .description("EngineBlock connections formatted as they were not cached or stale")
+            .register(meterRegistry);
+        Gauge.builder("manage.push.cache.size", connections, Map::size)
+            .description("Cached EngineBlock connections")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns a copy of the formatted connection, which can safely be changed by the caller. Nested maps and lists
+     * below the metadata.coin level are shared with the cached connection and must not be changed.
+     */
+    public Map<String, Object> connection(MetaData metaData, Function<MetaData, Map<String, Object>> formatter) {
+        Long version = metaData.getVersion();
+        CachedConnection cached = connections.get(metaData.getId());
+        if (cached != null && version != null && version.equals(cached.version())) {
+            hits.incrementAndGet();
+            return copy(cached.connection());
+        }
+        misses.incrementAndGet();
+        Map<String, Object> connection = formatter.apply(metaData);
+        if (version != null) {
+            connections.put(metaData.getId(), new CachedConnection(version, connection));
+        }
+        return copy(connection);
+    }
+
+    public void invalidate(String id) {
+        if (id != null) {
+            connections.remove(id);
+        }
+    }
+
+    public void retainAll(Collection<String> ids) {
+        connections.keySet().retainAll(ids);
+    }
+
+    public Map<String, Object> stats() {
+        return Map.of(
+            "size", connections.size(),
+            "hits", hits.get(),
+            "misses", misses.get()
+        );
+    }
+
+    private Map<String, Object> copy(Map<String, Object> connection) {
+        Map<String, Object> copy = new LinkedHashMap<>(connection);
+        Object metadata = copy.get("metadata");
+        if (metadata instanceof Map) {
+            Map<String, Object> metadataCopy = new TreeMap<>((Map<String, Object>) metadata);
+            Object coin = metadataCopy.get("coin");
+            if (coin instanceof Map) {
+                metadataCopy.put("coin", new TreeMap<>((Map<String, Object>) coin));
+            }
+            copy.put("metadata", metadataCopy);
+        }
+        return copy;
+    }
+
+    private record CachedConnection(Long version, Map<String, Object> connection) {
+    }
+
+}
@@ -0,0 +1,211 @@
+package manage.service.push;
+
+import manage.model.PushedConnection;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the EngineBlock connections of the last successful push, so the connections of a next push can be compared
+ * with what EngineBlock already has. Connections are compared by digest first, only the changed connections are
+ * read back and compared field by field.
+ */
+@Service
+public class PushDiffService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushDiffService.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final PushDigestService pushDigestService;
+    private final ObjectMapper objectMapper;
+
+    public PushDiffService(MongoTemplate mongoTemplate,
+                           PushDigestService pushDigestService,
+                           ObjectMapper objectMapper) {
+        this.mongoTemplate = mongoTemplate;
+        this.pushDigestService = pushDigestService;
+        this.objectMapper = objectMapper;
+    }
+
+    public Diff diff() {
+        return new Diff(pushedDigests());
+    }
+
+    public Recorder recorder() {
+        return new Recorder(pushedDigests());
+    }
+
+    /**
+     * For a delta push, where only the pushed connections and the removed connections are changed in EngineBlock
+     */
+    public void registerDelta(Map<String, Map<String, Object>> connections, Collection<String> removed) {
+        //Without digests all connections are recorded as changed
+        Recorder recorder = new Recorder(Map.of());
+        connections.forEach(recorder::accept);
+        recorder.save(removed);
+    }
+
+    private Map<String, String> pushedDigests() {
+        Query query = new Query();
+        query.fields().include("digest");
+        Map<String, String> digests = new HashMap<>();
+        try (Stream<PushedConnection> pushedConnections = mongoTemplate.stream(query, PushedConnection.class, PushedConnection.COLLECTION)) {
+            pushedConnections.forEach(pushedConnection -> digests.put(pushedConnection.getId(), pushedConnection.getDigest()));
+        }
+        return digests;
+    }
+
+    private void changes(JsonNode previous, JsonNode current, String path, List<Map<String, Object>> changes) {
+        if (previous != null && current != null && previous.isObject() && current.isObject()) {
+            Set<String> names = new TreeSet<>();
+            previous.properties().forEach(property -> names.add(property.getKey()));
+            current.properties().forEach(property -> names.add(property.getKey()));
+            names.forEach(name -> changes(previous.get(name), current.get(name), path.isEmpty() ? name : path + "." + name, changes));
+        } else if (previous == null || !previous.equals(current)) {
+            Map<String, Object> change = new LinkedHashMap<>();
+            change.put("path", path);
+            change.put("previous", previous);
+            change.put("current", current);
+            changes.add(change);
+        }
+    }
+
+    /**
+     * Compares the connections of a push that is not sent with the last pushed connections. Not thread-safe.
+     */
+    public class Diff {
+
+        private final Map<String, String> pushedDigests;
+        private final Set<String> connectionIds = new HashSet<>();
+        private final Map<String, Object> added = new TreeMap<>();
+        private final Map<String, List<Map<String, Object>>> changed = new TreeMap<>();
+        private int unchanged;
+
+        private Diff(Map<String, String> pushedDigests) {
+            this.pushedDigests = pushedDigests;
+        }
+
+        public void accept(String id, Map<String, Object> connection) {
+            connectionIds.add(id);
+            String pushedDigest = pushedDigests.get(id);
+            if (pushedDigest == null) {
+                added.put(id, connection.get("name"));
+            } else if (pushedDigest.equals(pushDigestService.digest(connection))) {
+                unchanged++;
+            } else {
+                PushedConnection pushedConnection = mongoTemplate.findById(id, PushedConnection.class);
+                List<Map<String, Object>> changes = new ArrayList<>();
+                changes(pushedConnection == null ? null : objectMapper.readTree(pushedConnection.getConnection()),
+                    objectMapper.valueToTree(connection), "", changes);
+                changed.put(id, changes);
+            }
+        }
+
+        public Map<String, Object> result() {
+            Set<String> removed = new TreeSet<>(pushedDigests.keySet());
+            removed.removeAll(connectionIds);
+            return Map.of(
+                "added", added,
+                "removed", removed,
+                "changed", changed,
+                "unchanged", unchanged
+            );
+        }
+    }
+
+    /**
+     * Records the connections of a push that is being sent. The connections that differ from the last push are written
+     * in batches to the pending collection while streaming, and merged into the pushed connections when the push was
+     * successful. Only the ids are kept in memory. Not thread-safe.
+     */
+    public class Recorder {
+
+        private final Map<String, String> pushedDigests;
+        private final Set<String> connectionIds = new HashSet<>();
+        private final Set<String> changedIds = new HashSet<>();
+        private final List<PushedConnection> batch = new ArrayList<>(BATCH_SIZE);
+
+        private Recorder(Map<String, String> pushedDigests) {
+            this.pushedDigests = pushedDigests;
+            //The pending connections of a push that failed
+            mongoTemplate.remove(new Query(), PushedConnection.PENDING_COLLECTION);
+        }
+
+        public void accept(String id, Map<String, Object> connection) {
+            connectionIds.add(id);
+            String digest = pushDigestService.digest(connection);
+            if (!digest.equals(pushedDigests.get(id))) {
+                changedIds.add(id);
+                batch.add(new PushedConnection(id, digest, objectMapper.writeValueAsString(connection)));
+                if (batch.size() == BATCH_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        public int size() {
+            return connectionIds.size();
+        }
+
+        /**
+         * For a full push, where all connections not recorded are removed from EngineBlock
+         */
+        public void save() {
+            Set<String> removed = new HashSet<>(pushedDigests.keySet());
+            removed.removeAll(connectionIds);
+            save(removed);
+        }
+
+        private void save(Collection<String> removed) {
+            flush();
+            if (!removed.isEmpty()) {
+                mongoTemplate.remove(Query.query(Criteria.where("_id").in(removed)), PushedConnection.class);
+            }
+            if (!changedIds.isEmpty()) {
+                mongoTemplate.getCollection(PushedConnection.PENDING_COLLECTION)
+                    .aggregate(List.of(new Document("$merge", new Document("into", PushedConnection.COLLECTION)
+                        .append("whenMatched", "replace")
+                        .append("whenNotMatched", "insert"))))
+                    .toCollection();
+                mongoTemplate.remove(new Query(), PushedConnection.PENDING_COLLECTION);
+            }
+            LOG.debug("Saved {} changed and removed {} pushed connections", changedIds.size(), removed.size());
+        }
+
+        //A retried push records the same connections again
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED,
+                PushedConnection.class, PushedConnection.PENDING_COLLECTION);
+            batch.forEach(pushedConnection -> bulkOperations.replaceOne(
+                Query.query(Criteria.where("_id").is(pushedConnection.getId())), pushedConnection,
+                FindAndReplaceOptions.options().upsert()));
+            bulkOperations.execute();
+            batch.clear();
+        }
+    }
+}
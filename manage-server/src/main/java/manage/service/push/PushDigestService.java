@@ -0,0 +1,64 @@
+package manage.service.push;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.SneakyThrows;
+import manage.model.PushWatermark;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SerializationFeature;
+
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Objects;
+
+/**
+ * Digests of push payloads to skip a push when the payload is unchanged since the last successful push. Map entries
+ * are ordered by key before digesting, so the digest does not depend on the Map implementations of the payload.
+ * The pushes and skips are counted per target in the manage.push.pushed and manage.push.skipped metrics.
+ */
+@Service
+public class PushDigestService {
+
+    private final PushWatermarkService pushWatermarkService;
+    private final ObjectWriter objectWriter;
+    private final MeterRegistry meterRegistry;
+
+    public PushDigestService(PushWatermarkService pushWatermarkService,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry) {
+        this.pushWatermarkService = pushWatermarkService;
+        this.objectWriter = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @SneakyThrows
+    public String digest(Object payload) {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(messageDigest.digest(objectWriter.writeValueAsBytes(payload)));
+    }
+
+    public boolean unchanged(String target, String digest) {
+        return pushWatermarkService.findWatermark(target)
+            .map(PushWatermark::getDigest)
+            .filter(lastDigest -> Objects.equals(lastDigest, digest))
+            .isPresent();
+    }
+
+    public void registerPush(String target, String digest) {
+        pushWatermarkService.registerDigest(target, digest);
+        counter("manage.push.pushed", "Successful pushes", target).increment();
+    }
+
+    public void registerSkip(String target) {
+        counter("manage.push.skipped", "Pushes skipped as nothing is changed since the last push", target).increment();
+    }
+
+    private Counter counter(String name, String description, String target) {
+        return Counter.builder(name)
+            .description(description)
+            .tag("target", target)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,130 @@
+package manage.service.push;
+
+import jakarta.annotation.PreDestroy;
+import manage.control.DatabaseController;
+import manage.model.PushJob;
+import manage.model.PushOptions;
+import manage.service.jobs.ClusterLockService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes pushes as jobs on a separate thread, so the HTTP request that submitted the push does not have to wait
+ * for it. The jobs are stored in Mongo, so the status of a job can be requested from any node in the cluster.
+ */
+@Service
+@SuppressWarnings("unchecked")
+public class PushJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushJobService.class);
+
+    private final DatabaseController databaseController;
+    private final MongoTemplate mongoTemplate;
+    private final ClusterLockService clusterLockService;
+    private final long retentionHours;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PushJobService(DatabaseController databaseController,
+                          MongoTemplate mongoTemplate,
+                          ClusterLockService clusterLockService,
+                          @Value("${push.jobs.retention_hours}") long retentionHours) {
+        this.databaseController = databaseController;
+        this.mongoTemplate = mongoTemplate;
+        this.clusterLockService = clusterLockService;
+        this.retentionHours = retentionHours;
+    }
+
+    /**
+     * Stores the job and starts the push. The returned future completes with the push result when the job is done.
+     */
+    public Submission submit(PushOptions pushOptions, String requestedBy) {
+        Instant created = Instant.now();
+        PushJob pushJob = new PushJob(UUID.randomUUID().toString(), pushOptions, requestedBy,
+            clusterLockService.getNodeId(), created, created.plus(retentionHours, ChronoUnit.HOURS));
+        mongoTemplate.insert(pushJob);
+        LOG.info("Push job {} with options {} submitted by {}", pushJob.getId(), pushOptions, requestedBy);
+        CompletableFuture<ResponseEntity<Map>> result =
+            CompletableFuture.supplyAsync(() -> run(pushJob.getId(), pushOptions), executor);
+        return new Submission(pushJob, result);
+    }
+
+    /**
+     * The synchronous push is a job that is waited for
+     */
+    public ResponseEntity<Map> pushAndWait(PushOptions pushOptions, String requestedBy) {
+        Submission submission = submit(pushOptions, requestedBy);
+        ResponseEntity<Map> response = submission.result().join();
+        Map<String, Object> result = new HashMap<>(response.getBody());
+        result.put("jobId", submission.pushJob().getId());
+        return new ResponseEntity<>(result, response.getStatusCode());
+    }
+
+    public Optional<PushJob> find(String id) {
+        return Optional.ofNullable(mongoTemplate.findById(id, PushJob.class));
+    }
+
+    private ResponseEntity<Map> run(String id, PushOptions pushOptions) {
+        update(id, new Update()
+            .set("status", PushJob.Status.RUNNING)
+            .set("started", Instant.now()));
+        ResponseEntity<Map> response;
+        try {
+            response = databaseController.doPush(pushOptions,
+                (target, progress) -> update(id, new Update().set("targets." + target, progress)));
+        } catch (RuntimeException e) {
+            LOG.error("Error in push job " + id, e);
+            response = new ResponseEntity<>(Map.of("message", String.valueOf(e.getMessage())),
+                HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        Map<String, Object> result = response.getBody();
+        Update update = new Update()
+            .set("status", response.getStatusCode().is2xxSuccessful() ? PushJob.Status.DONE : PushJob.Status.FAILED)
+            .set("finished", Instant.now())
+            .set("result", result);
+        //A push joined from another node did not report progress, the result contains the outcome per target
+        result.forEach((target, targetResult) -> {
+            if (targetResult instanceof Map) {
+                update.set("targets." + target, targetResult);
+            }
+        });
+        update(id, update);
+        return response;
+    }
+
+    /*
+     * The job only reports the push, a failure to store the progress must not fail the push itself
+     */
+    private void update(String id, Update update) {
+        try {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)), update, PushJob.class);
+        } catch (RuntimeException e) {
+            LOG.error("Error in updating push job " + id, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public record Submission(PushJob pushJob, CompletableFuture<ResponseEntity<Map>> result) {
+    }
+}
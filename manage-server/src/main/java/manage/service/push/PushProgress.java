@@ -0,0 +1,15 @@
+package manage.service.push;
+
+import java.util.Map;
+
+/**
+ * Receives the status of a push target when the push to the target starts and its result when it is done
+ */
+@FunctionalInterface
+public interface PushProgress {
+
+    PushProgress NONE = (target, progress) -> {
+    };
+
+    void update(String target, Map<String, Object> progress);
+}
@@ -0,0 +1,221 @@
+package manage.service.push;
+
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retries the calls to a push target with exponential backoff and full jitter when the push never reached the target:
+ * the connection was refused or timed out, the host was not found, or the target answered that it is temporarily
+ * unavailable. A read timeout is not retried, as the target may still be processing the push. After a number of
+ * consecutive failed calls the circuit of the target opens and calls fail fast, until one trial call is allowed after
+ * the open period.
+ */
+@Service
+public class PushResilienceService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushResilienceService.class);
+
+    //A gateway timeout is not retried, the target behind the gateway may still be processing the push
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(
+        HttpStatus.BAD_GATEWAY.value(), HttpStatus.SERVICE_UNAVAILABLE.value());
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    public PushResilienceService(@Value("${push.retry.max_attempts}") int maxAttempts,
+                                 @Value("${push.retry.initial_backoff_millis}") long initialBackoffMillis,
+                                 @Value("${push.retry.max_backoff_millis}") long maxBackoffMillis,
+                                 @Value("${push.circuit_breaker.failure_threshold}") int failureThreshold,
+                                 @Value("${push.circuit_breaker.open_seconds}") long openSeconds) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openSeconds * 1000L;
+    }
+
+    public <T> T execute(String target, Supplier<T> call) {
+        Circuit circuit = circuits.computeIfAbsent(target, Circuit::new);
+        for (int attempt = 1; ; attempt++) {
+            if (!circuit.allowRequest()) {
+                throw new PushTargetUnavailableException(circuit.openMessage());
+            }
+            long start = System.currentTimeMillis();
+            try {
+                T result = call.get();
+                circuit.success(System.currentTimeMillis() - start);
+                return result;
+            } catch (RuntimeException e) {
+                long latency = System.currentTimeMillis() - start;
+                if (!isTargetFailure(e)) {
+                    //Not a failure of the target, e.g. a 4xx response
+                    circuit.success(latency);
+                    throw e;
+                }
+                circuit.failure(latency, e);
+                if (attempt >= maxAttempts || !isRetryable(e) || circuit.state() == State.OPEN) {
+                    throw e;
+                }
+                long backoff = backoff(attempt);
+                LOG.warn("Attempt {} of {} to push to {} failed with {}, retrying in {} ms",
+                    attempt, maxAttempts, target, e.getMessage(), backoff);
+                if (!sleep(backoff)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * The state, failures and latency per target, for the health endpoint
+     */
+    public Map<String, Map<String, Object>> circuits() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        circuits.forEach((target, circuit) -> result.put(target, circuit.details()));
+        return result;
+    }
+
+    public boolean anyOpen() {
+        return circuits.values().stream().anyMatch(circuit -> circuit.state() == State.OPEN);
+    }
+
+    private long backoff(int attempt) {
+        long exponential = initialBackoffMillis * (1L << Math.min(attempt - 1, 20));
+        long cap = Math.min(maxBackoffMillis, exponential);
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean isTargetFailure(RuntimeException e) {
+        return e instanceof ResourceAccessException || e instanceof HttpServerErrorException;
+    }
+
+    private static boolean isRetryable(RuntimeException e) {
+        return (e instanceof ResourceAccessException && notDelivered(e)) ||
+            (e instanceof HttpServerErrorException serverError &&
+                RETRYABLE_STATUSES.contains(serverError.getStatusCode().value()));
+    }
+
+    /*
+     * Whether the connection to the target failed, in which case no request was sent. The read timeouts of the
+     * HttpClient are a SocketTimeoutException, its connect timeouts are a ConnectTimeoutException.
+     */
+    private static boolean notDelivered(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException ||
+                cause instanceof UnknownHostException || cause instanceof ConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class Circuit {
+
+        private final String target;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private boolean trialInProgress;
+        private long lastLatencyMillis;
+        private Instant lastSuccess;
+        private Instant lastFailure;
+        private String lastError;
+
+        private Circuit(String target) {
+            this.target = target;
+        }
+
+        private synchronized boolean allowRequest() {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                state = State.HALF_OPEN;
+                trialInProgress = false;
+            }
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> false;
+                case HALF_OPEN -> {
+                    boolean allowed = !trialInProgress;
+                    trialInProgress = true;
+                    yield allowed;
+                }
+            };
+        }
+
+        private synchronized void success(long latency) {
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            lastLatencyMillis = latency;
+            lastSuccess = Instant.now();
+        }
+
+        private synchronized void failure(long latency, RuntimeException e) {
+            consecutiveFailures++;
+            lastLatencyMillis = latency;
+            lastFailure = Instant.now();
+            lastError = e.getMessage();
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    LOG.error("Opening the push circuit of {} after {} consecutive failures", target, consecutiveFailures);
+                }
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+
+        private synchronized State state() {
+            return state;
+        }
+
+        private synchronized String openMessage() {
+            return String.format("Circuit of %s is open after %s consecutive failures, next attempt after %s",
+                target, consecutiveFailures, Instant.ofEpochMilli(openedAt + openMillis));
+        }
+
+        private synchronized Map<String, Object> details() {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", state);
+            details.put("consecutiveFailures", consecutiveFailures);
+            details.put("lastLatencyMillis", lastLatencyMillis);
+            details.put("lastSuccess", lastSuccess);
+            details.put("lastFailure", lastFailure);
+            details.put("lastError", lastError);
+            return details;
+        }
+    }
+}
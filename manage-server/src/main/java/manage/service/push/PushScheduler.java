@@ -0,0 +1,77 @@
+package manage.service.push;
+
+import jakarta.annotation.PreDestroy;
+import manage.control.DatabaseController;
+import manage.model.PushOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces push requests. All requests within the debounce window are merged into one push and as there is only one
+ * push thread, there is never more than one push in flight. Callers either ignore the returned future (fire and
+ * forget) or wait for the merged push to finish.
+ */
+@Service
+public class PushScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PushScheduler.class);
+
+    private final DatabaseController databaseController;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private PushOptions pendingPushOptions;
+    private CompletableFuture<ResponseEntity<Map>> pendingPush;
+
+    public PushScheduler(DatabaseController databaseController,
+                         @Value("${push.debounce_millis}") long debounceMillis) {
+        this.databaseController = databaseController;
+        this.debounceMillis = debounceMillis;
+    }
+
+    public synchronized CompletableFuture<ResponseEntity<Map>> schedule(PushOptions pushOptions) {
+        if (pendingPush == null) {
+            pendingPushOptions = new PushOptions(false, false, false, false);
+            pendingPush = new CompletableFuture<>();
+            executor.schedule(this::push, debounceMillis, TimeUnit.MILLISECONDS);
+        } else {
+            LOG.debug("Merging push request {} with pending push {}", pushOptions, pendingPushOptions);
+        }
+        pendingPushOptions.setIncludeEB(pendingPushOptions.isIncludeEB() || pushOptions.isIncludeEB());
+        pendingPushOptions.setIncludeOIDC(pendingPushOptions.isIncludeOIDC() || pushOptions.isIncludeOIDC());
+        pendingPushOptions.setIncludePdP(pendingPushOptions.isIncludePdP() || pushOptions.isIncludePdP());
+        pendingPushOptions.setIncludeStepUp(pendingPushOptions.isIncludeStepUp() || pushOptions.isIncludeStepUp());
+        return pendingPush;
+    }
+
+    private void push() {
+        PushOptions pushOptions;
+        CompletableFuture<ResponseEntity<Map>> push;
+        synchronized (this) {
+            pushOptions = pendingPushOptions;
+            push = pendingPush;
+            pendingPushOptions = null;
+            pendingPush = null;
+        }
+        try {
+            push.complete(databaseController.doPush(pushOptions));
+        } catch (RuntimeException e) {
+            LOG.error("Error in scheduled push with options " + pushOptions, e);
+            push.completeExceptionally(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,11 @@
+package manage.service.push;
+
+/**
+ * Thrown without calling the push target while its circuit is open
+ */
+public class PushTargetUnavailableException extends RuntimeException {
+
+    public PushTargetUnavailableException(String message) {
+        super(message);
+    }
+}
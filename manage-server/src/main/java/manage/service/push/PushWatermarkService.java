@@ -0,0 +1,44 @@
+package manage.service.push;
+
+import manage.model.PushWatermark;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Keeps track per push target of the moment of the last successful push. The moment is taken before the push
+ * payload is collected, so changes saved during a push are picked up by the next delta push. The digest of the
+ * last pushed payload is stored in the same document.
+ */
+@Service
+public class PushWatermarkService {
+
+    private final MongoTemplate mongoTemplate;
+
+    public PushWatermarkService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public Optional<PushWatermark> findWatermark(String target) {
+        return Optional.ofNullable(mongoTemplate.findById(target, PushWatermark.class));
+    }
+
+    public void registerPush(String target, Instant pushStarted, boolean fullPush) {
+        Update update = new Update().set("lastPush", pushStarted);
+        if (fullPush) {
+            update.set("lastFullPush", pushStarted);
+        }
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(target)), update, PushWatermark.class);
+    }
+
+    public void registerDigest(String target, String digest) {
+        Update update = new Update().set("digest", digest);
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(target)), update, PushWatermark.class);
+    }
+
+}
@@ -8,6 +8,7 @@ import manage.conf.MetaDataAutoConfiguration;
 import manage.model.EntityType;
 import manage.model.MetaData;
 import manage.repository.MetaDataRepository;
+import manage.repository.PolicyEnforcementIndex;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -59,6 +60,9 @@ public abstract class AbstractIntegrationTest implements TestUtils {
     @Autowired
     protected MetaDataAutoConfiguration metaDataAutoConfiguration;
 
+    @Autowired
+    protected PolicyEnforcementIndex policyEnforcementIndex;
+
     @LocalServerPort
     protected int port;
 
@@ -107,6 +111,11 @@ public abstract class AbstractIntegrationTest implements TestUtils {
             groupedMetaData
                 .forEach((type, metaData) -> await().until(
                         () -> mongoTemplate.count(query, type) == metaData.size()));
+            //The seed is inserted without the MetaDataService and MetaDataRepository
+            policyEnforcementIndex.rebuild();
+            metaDataRepository.getAutoCompleteIndex().rebuild();
+            metaDataRepository.getActivityLog().rebuild();
+            metaDataRepository.getEntityChanges().rebuild();
         }
     }
 
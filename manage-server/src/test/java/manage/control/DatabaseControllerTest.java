@@ -1,7 +1,9 @@
 package manage.control;
 
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
 import io.restassured.common.mapper.TypeRef;
 import manage.AbstractIntegrationTest;
+import manage.model.MetaData;
 import manage.policies.PdpPolicyDefinition;
 import org.junit.jupiter.api.Test;
 
@@ -17,8 +19,11 @@ import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static io.restassured.RestAssured.given;
 import static io.restassured.http.ContentType.JSON;
+import static org.apache.http.HttpStatus.SC_ACCEPTED;
 import static org.apache.http.HttpStatus.SC_INTERNAL_SERVER_ERROR;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
 import static org.apache.http.HttpStatus.SC_OK;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -50,6 +55,70 @@ public class DatabaseControllerTest extends AbstractIntegrationTest {
         pdpWireMockServer.verify(1, putRequestedFor(urlEqualTo("/pdp/api/manage/push")));
     }
 
+    @Test
+    public void pushJob() {
+        Map job = given()
+            .contentType(JSON)
+            .body(Map.of("includeEB", true, "includeOIDC", false, "includePdP", true, "includeStepUp", false))
+            .when()
+            .post("manage/api/client/playground/push/jobs")
+            .then()
+            .statusCode(SC_ACCEPTED)
+            .extract().as(Map.class);
+        String id = (String) job.get("id");
+
+        await().until(() -> !List.of("QUEUED", "RUNNING").contains(pushJob(id).get("status")));
+
+        Map result = pushJob(id);
+        assertEquals("DONE", result.get("status"));
+        Map targets = (Map) result.get("targets");
+        assertEquals("OK", ((Map) targets.get("eb")).get("status"));
+        assertEquals("OK", ((Map) targets.get("pdp")).get("status"));
+        assertTrue(((Map) targets.get("eb")).containsKey("payloadSize"));
+        assertTrue(((Map) targets.get("eb")).containsKey("duration"));
+    }
+
+    @Test
+    public void pushJobNotFound() {
+        given()
+            .when()
+            .get("manage/api/client/playground/push/jobs/nope")
+            .then()
+            .statusCode(SC_NOT_FOUND);
+    }
+
+    @Test
+    public void synchronousPushIsJob() {
+        Map results = push(Map.of("includeEB", false, "includeOIDC", true, "includePdP", false, "includeStepUp", false));
+
+        assertEquals("DONE", pushJob((String) results.get("jobId")).get("status"));
+    }
+
+    @Test
+    public void pushStreamsPreviewToEb() throws Exception {
+        Map preview = given()
+            .when()
+            .get("manage/api/client/playground/pushPreview")
+            .then()
+            .statusCode(SC_OK)
+            .extract().as(Map.class);
+
+        given()
+            .contentType(JSON)
+            .body(Map.of("includeEB", true, "includeOIDC", false, "includePdP", false, "includeStepUp", false))
+            .when()
+            .put("manage/api/client/playground/push")
+            .then()
+            .statusCode(SC_OK);
+
+        List<LoggedRequest> requests = pushWireMockServer.findAll(postRequestedFor(urlEqualTo("/api/connections")));
+        assertEquals(1, requests.size());
+        LoggedRequest request = requests.get(0);
+        assertTrue(request.getHeader("Content-Type").startsWith("application/json"));
+        assertTrue(request.getHeader("Authorization").startsWith("Basic "));
+        assertEquals(preview, objectMapper.readValue(request.getBodyAsString(), Map.class));
+    }
+
     @Test
     public void pushReturnsErrorWhenEbFails() {
         pushWireMockServer.stubFor(post(urlEqualTo("/api/connections"))
@@ -95,6 +164,15 @@ public class DatabaseControllerTest extends AbstractIntegrationTest {
         assertTrue(message.contains("{\"error\":\"pdp unavailable\"}"));
     }
 
+    private Map pushJob(String id) {
+        return given()
+            .when()
+            .get("manage/api/client/playground/push/jobs/" + id)
+            .then()
+            .statusCode(SC_OK)
+            .extract().as(Map.class);
+    }
+
     private Map push(Map<String, Boolean> pushOptions) {
         return given()
             .contentType(JSON)
@@ -159,6 +237,32 @@ public class DatabaseControllerTest extends AbstractIntegrationTest {
         assertEquals(2, sramServices.size());
     }
 
+    @Test
+    public void pushPreviewAfterRenameOfPolicyServiceProvider() {
+        MetaData sp = given()
+            .when()
+            .get("manage/api/client/metadata/saml20_sp/11")
+            .as(MetaData.class);
+        sp.getData().put("entityid", "https://1234aaab.renamed.nl");
+        given().when()
+            .body(sp)
+            .header("Content-type", "application/json")
+            .put("/manage/api/client/metadata")
+            .then()
+            .statusCode(SC_OK);
+
+        Map results = given()
+            .when()
+            .get("manage/api/client/playground/pushPreview")
+            .then()
+            .statusCode(SC_OK)
+            .extract().as(Map.class);
+        Map connection = (Map) ((Map) results.get("connections")).get("11");
+        assertEquals("https://1234aaab.renamed.nl", connection.get("name"));
+        Map coin = (Map) ((Map) connection.get("metadata")).get("coin");
+        assertEquals("1", coin.get("policy_enforcement_decision_required"));
+    }
+
     @Test
     public void pushPreviewPdP() {
         List<PdpPolicyDefinition> pdpPolicyDefinitions = given()
@@ -1,29 +1,56 @@
 package manage.control;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manage.model.EntityType;
+import manage.model.MetaData;
 import manage.model.PushOptions;
+import manage.model.PushWatermark;
 import manage.repository.MetaDataRepository;
+import manage.repository.PolicyEnforcementIndex;
+import manage.service.jobs.ClusterLockService;
+import manage.service.push.ClusterPushService;
+import manage.service.push.EngineBlockConnectionCache;
+import manage.service.push.PushDiffService;
+import manage.service.push.PushResilienceService;
+import manage.service.push.PushDigestService;
+import manage.service.push.PushWatermarkService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.client.MockClientHttpRequest;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.RestTemplate;
 import tools.jackson.databind.json.JsonMapper;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DatabaseControllerUnitTest {
@@ -32,6 +59,9 @@ public class DatabaseControllerUnitTest {
     private final MetaDataRepository metaDataRepository = Mockito.mock(MetaDataRepository.class);
     private final org.springframework.data.mongodb.core.MongoTemplate mongoTemplate = Mockito.mock(org.springframework.data.mongodb.core.MongoTemplate.class);
     private final Environment environment = Mockito.mock(Environment.class);
+    private final PushWatermarkService pushWatermarkService = Mockito.mock(PushWatermarkService.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ClusterLockService clusterLockService = Mockito.mock(ClusterLockService.class);
     private final RestTemplate pdpRestTemplate = Mockito.mock(RestTemplate.class);
     private final RestTemplate ebRestTemplate = Mockito.mock(RestTemplate.class);
     private final RestTemplate oidcRestTemplate = Mockito.mock(RestTemplate.class);
@@ -40,27 +70,48 @@ public class DatabaseControllerUnitTest {
     @BeforeEach
     public void before() throws IOException {
         when(metaDataRepository.getMongoTemplate()).thenReturn(mongoTemplate);
+        when(clusterLockService.tryAcquire(anyString(), anyInt())).thenReturn(true);
+        when(clusterLockService.getNodeId()).thenReturn("node-1");
         subject = new DatabaseController(
             metaDataRepository,
+            pushWatermarkService,
+            new EngineBlockConnectionCache(meterRegistry),
+            new PushDigestService(pushWatermarkService, new JsonMapper(), meterRegistry),
+            new ClusterPushService(clusterLockService, mongoTemplate, 600, 10),
+            new PolicyEnforcementIndex(mongoTemplate),
+            new PushDiffService(mongoTemplate, new PushDigestService(pushWatermarkService, new JsonMapper(), meterRegistry), new JsonMapper()),
+            new PushResilienceService(3, 0, 0, 5, 60),
             "http://eb-push",
             "user",
             "pass",
             false,
             false,
             false,
+            false,
+            false,
+            "http://eb-delta-push",
+            60,
+            true,
             "http://oidc-push",
             "user",
             "pass",
             true,
+            false,
             "user",
             "pass",
             "http://pdp-push",
             true,
+            false,
             true,
             "http://stepup-push",
             "user",
             "pass",
             new ClassPathResource("stepup_config.json"),
+            25,
+            5,
+            180,
+            5000,
+            60,
             "sbs.test.sram.surf.nl",
             new JsonMapper(),
             environment);
@@ -120,16 +171,191 @@ public class DatabaseControllerUnitTest {
         assertTrue(message.contains("Error in push to PDP (http://pdp-push) error Connection refused"));
     }
 
+    @Test
+    public void doPushPdpFatalError() {
+        doThrow(new StackOverflowError("Too deep")).when(pdpRestTemplate).put(eq("http://pdp-push"), anyList());
+        when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, true, false));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertTrue(((String) response.getBody().get("message")).contains("Error in push to PDP (http://pdp-push) error Too deep"));
+        assertEquals("ERROR", ((Map<String, Object>) response.getBody().get("pdp")).get("status"));
+        assertEquals("OK", ((Map<String, Object>) response.getBody().get("eb")).get("status"));
+    }
+
     @Test
     public void doPushSuccess() {
         when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
-        when(ebRestTemplate.postForEntity(eq("http://eb-push"), anyMap(), eq(String.class))).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
 
         ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         Map<String, Object> ebResult = (Map<String, Object>) response.getBody().get("eb");
         assertEquals("OK", ebResult.get("status"));
+        assertEquals("node-1", response.getBody().get("node"));
+        verify(clusterLockService).release("push");
+    }
+
+    @Test
+    public void doPushEbStreamed() throws IOException {
+        when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+
+        subject.doPush(new PushOptions(true, false, false, false));
+
+        ArgumentCaptor<RequestCallback> requestCallback = ArgumentCaptor.forClass(RequestCallback.class);
+        verify(ebRestTemplate).execute(eq("http://eb-push"), eq(HttpMethod.POST), requestCallback.capture(), any());
+        MockClientHttpRequest request = new MockClientHttpRequest();
+        requestCallback.getValue().doWithRequest(request);
+        assertEquals(Map.of("connections", Map.of()), new JsonMapper().readValue(request.getBodyAsString(), Map.class));
+    }
+
+    @Test
+    public void doPushTargetsConcurrently() {
+        doThrow(new RuntimeException("Connection refused")).when(pdpRestTemplate).put(eq("http://pdp-push"), anyList());
+        when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, true, false));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        Map<String, Object> body = response.getBody();
+        assertTrue(((String) body.get("message")).contains("Error in push to PDP (http://pdp-push) error Connection refused"));
+        Map<String, Object> ebResult = (Map<String, Object>) body.get("eb");
+        assertEquals("OK", ebResult.get("status"));
+        assertTrue(ebResult.containsKey("duration"));
+        assertEquals("ERROR", ((Map<String, Object>) body.get("pdp")).get("status"));
+        assertEquals("OK", ((Map<String, Object>) body.get("oidc")).get("status"));
+    }
+
+    @Test
+    public void doPushPdpSkippedWhenUnchanged() {
+        String digest = new PushDigestService(pushWatermarkService, new JsonMapper(), meterRegistry).digest(List.of());
+        when(pushWatermarkService.findWatermark("pdp")).thenReturn(Optional.of(new PushWatermark("pdp", null, null, digest)));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(false, false, true, false));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Map<String, Object> pdpResult = (Map<String, Object>) response.getBody().get("pdp");
+        assertEquals(true, pdpResult.get("skipped"));
+        verify(pdpRestTemplate, never()).put(anyString(), any());
+        verify(pushWatermarkService, never()).registerDigest(anyString(), anyString());
+    }
+
+    @Test
+    public void doPushPdpRegistersDigest() {
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(false, false, true, false));
+
+        Map<String, Object> pdpResult = (Map<String, Object>) response.getBody().get("pdp");
+        assertEquals(false, pdpResult.get("skipped"));
+        verify(pdpRestTemplate).put(eq("http://pdp-push"), anyList());
+        verify(pushWatermarkService).registerDigest(eq("pdp"), anyString());
+        assertEquals(1.0, meterRegistry.get("manage.push.pushed").tag("target", "pdp").counter().count());
+    }
+
+    @Test
+    public void doPushEbFullSkippedWhenNothingChanged() {
+        when(pushWatermarkService.findWatermark("eb")).thenReturn(Optional.of(new PushWatermark("eb", Instant.now(), null, null)));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
+
+        Map<String, Object> ebResult = (Map<String, Object>) response.getBody().get("eb");
+        assertEquals(true, ebResult.get("skipped"));
+        assertEquals(1.0, meterRegistry.get("manage.push.skipped").tag("target", "eb").counter().count());
+        verify(ebRestTemplate, never()).execute(anyString(), any(), any(RequestCallback.class), any());
+        verify(pushWatermarkService).registerPush(eq("eb"), any(), eq(false));
+    }
+
+    @Test
+    public void doPushEbFullNotSkippedWhenChanged() {
+        when(pushWatermarkService.findWatermark("eb")).thenReturn(Optional.of(new PushWatermark("eb", Instant.now(), null, null)));
+        when(metaDataRepository.hasChangesSince(eq(EntityType.PDP.getType()), any())).thenReturn(true);
+        when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
+
+        Map<String, Object> ebResult = (Map<String, Object>) response.getBody().get("eb");
+        assertEquals(false, ebResult.get("skipped"));
+        verify(pushWatermarkService).registerPush(eq("eb"), any(), eq(true));
+    }
+
+    @Test
+    public void doPushEbDueFullPushNeverSkipped() {
+        ReflectionTestUtils.setField(subject, "ebDeltaEnabled", true);
+        Instant lastFullPush = Instant.now().minus(Duration.ofHours(2));
+        when(pushWatermarkService.findWatermark("eb")).thenReturn(Optional.of(new PushWatermark("eb", Instant.now(), lastFullPush, null)));
+        when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
+
+        Map<String, Object> ebResult = (Map<String, Object>) response.getBody().get("eb");
+        assertEquals("full", ebResult.get("mode"));
+        assertEquals(false, ebResult.get("skipped"));
+        verify(pushWatermarkService).registerPush(eq("eb"), any(), eq(true));
+    }
+
+    @Test
+    public void pushPreviewFormatsInBatches() {
+        List<MetaData> serviceProviders = IntStream.range(0, 1_000)
+            .mapToObj(i -> new MetaData("sp-" + i, 1L, EntityType.SP.getType(), null, new HashMap<>(Map.of(
+                "entityid", "https://sp-" + i,
+                "metaDataFields", new HashMap<>(Map.of("coin:exclude_from_push", i % 10 == 0))))))
+            .toList();
+        when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation ->
+            EntityType.SP.getType().equals(invocation.getArgument(2)) ? serviceProviders.stream() : java.util.stream.Stream.empty());
+
+        Map<String, Map<String, Object>> connections = subject.pushPreview().get("connections");
+
+        assertEquals(900, connections.size());
+        assertEquals("https://sp-1", connections.get("sp-1").get("name"));
+        assertTrue(connections.keySet().stream().noneMatch(id -> id.endsWith("0")));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, Mockito.atLeastOnce()).stream(query.capture(), any(), anyString());
+        assertTrue(query.getValue().getFieldsObject().containsKey("data.metaDataFields"));
+        assertFalse(query.getValue().getFieldsObject().containsKey("revision"));
+    }
+
+    @Test
+    public void doPushEbDelta() {
+        ReflectionTestUtils.setField(subject, "ebDeltaEnabled", true);
+        Instant lastPush = Instant.now().minusSeconds(60);
+        when(pushWatermarkService.findWatermark("eb")).thenReturn(Optional.of(new PushWatermark("eb", lastPush, lastPush, null)));
+        when(metaDataRepository.terminatedSince(EntityType.IDP.getType(), lastPush)).thenReturn(List.of("idp-id"));
+        when(ebRestTemplate.postForEntity(eq("http://eb-delta-push"), anyMap(), eq(String.class))).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Map<String, Object> ebResult = (Map<String, Object>) response.getBody().get("eb");
+        assertEquals("delta", ebResult.get("mode"));
+
+        ArgumentCaptor<Map> payload = ArgumentCaptor.forClass(Map.class);
+        verify(ebRestTemplate).postForEntity(eq("http://eb-delta-push"), payload.capture(), eq(String.class));
+        assertEquals(Set.of("idp-id"), payload.getValue().get("removed"));
+        assertEquals(Map.of(), payload.getValue().get("connections"));
+        verify(pushWatermarkService).registerPush(eq("eb"), any(Instant.class), eq(false));
+    }
+
+    @Test
+    public void doPushEbFullWhenPoliciesChanged() {
+        ReflectionTestUtils.setField(subject, "ebDeltaEnabled", true);
+        Instant lastPush = Instant.now().minusSeconds(60);
+        when(pushWatermarkService.findWatermark("eb")).thenReturn(Optional.of(new PushWatermark("eb", lastPush, lastPush, null)));
+        when(metaDataRepository.hasChangesSince(EntityType.PDP.getType(), lastPush)).thenReturn(true);
+        when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenReturn(new ResponseEntity<>("OK", HttpStatus.OK));
+
+        ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
+
+        Map<String, Object> ebResult = (Map<String, Object>) response.getBody().get("eb");
+        assertEquals("full", ebResult.get("mode"));
+        verify(pushWatermarkService).registerPush(eq("eb"), any(Instant.class), eq(true));
     }
 
     @Test
@@ -142,7 +368,7 @@ public class DatabaseControllerUnitTest {
             StandardCharsets.UTF_8);
 
         when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
-        when(ebRestTemplate.postForEntity(eq("http://eb-push"), anyMap(), eq(String.class))).thenThrow(exception);
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenThrow(exception);
 
         ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
 
@@ -161,7 +387,7 @@ public class DatabaseControllerUnitTest {
             StandardCharsets.UTF_8);
 
         when(mongoTemplate.stream(any(), any(), anyString())).thenAnswer(invocation -> java.util.stream.Stream.empty());
-        when(ebRestTemplate.postForEntity(eq("http://eb-push"), anyMap(), eq(String.class))).thenThrow(exception);
+        when(ebRestTemplate.execute(eq("http://eb-push"), eq(HttpMethod.POST), any(RequestCallback.class), any())).thenThrow(exception);
 
         ResponseEntity<Map> response = subject.doPush(new PushOptions(true, false, false, false));
 
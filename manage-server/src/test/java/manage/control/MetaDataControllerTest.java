@@ -2,6 +2,7 @@ package manage.control;
 
 import io.restassured.common.mapper.TypeRef;
 import io.restassured.http.ContentType;
+import io.restassured.response.Response;
 import io.restassured.response.ValidatableResponse;
 import io.restassured.specification.RequestSpecification;
 import lombok.SneakyThrows;
@@ -10,6 +11,8 @@ import manage.model.*;
 import org.everit.json.schema.ValidationException;
 import org.junit.jupiter.api.Test;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 
 import java.io.IOException;
@@ -478,6 +481,18 @@ public class MetaDataControllerTest extends AbstractIntegrationTest {
                 "https://idp.test2.surfconext.nl"));
     }
 
+    @Test
+    public void autoCompleteInfixAndCase() {
+        given()
+            .when()
+            .queryParam("query", "OCK-S")
+            .get("manage/api/client/autocomplete/saml20_sp")
+            .then()
+            .statusCode(SC_OK)
+            .body("suggestions.size()", is(1))
+            .body("suggestions.data.entityid", hasItems("http://mock-sp"));
+    }
+
     @Test
     public void autoAlternativesWildcards() {
         given()
@@ -574,6 +589,44 @@ public class MetaDataControllerTest extends AbstractIntegrationTest {
                 .count()));
     }
 
+    @Test
+    public void streamAllEntities() {
+        String body = given()
+            .when()
+            .accept("application/x-ndjson")
+            .get("manage/api/client/metadata/allentities")
+            .then()
+            .statusCode(SC_OK)
+            .contentType("application/x-ndjson")
+            .extract()
+            .asString();
+        List<String> lines = body.lines().toList();
+        assertEquals(metaDataList.stream()
+            .filter(m -> List.of("oidc10_rp", "saml20_sp").contains(m.getType()))
+            .count(), lines.size());
+        assertTrue(lines.stream().allMatch(line -> line.startsWith("{") && line.contains("\"entityid\"")));
+    }
+
+    @Test
+    public void streamRawSearch() {
+        String query = "{$and: [{$or:[{\"data.allowedEntities.name\": {$in: [\"http://mock-idp\"]}}, {\"data" +
+            ".allowedall\": true}]}, {\"data.state\":\"prodaccepted\"}]}";
+        String body = given()
+            .auth()
+            .preemptive()
+            .basic("sp-portal", "secret")
+            .when()
+            .header("Content-type", "application/json")
+            .accept("application/x-ndjson")
+            .body(query)
+            .post("manage/api/internal/rawSearch/saml20_sp")
+            .then()
+            .statusCode(SC_OK)
+            .extract()
+            .asString();
+        assertEquals(5, body.lines().count());
+    }
+
     /**
      * This is an outstanding bug where Manage cast numeric strings to int. Won't be fixed to
      * maintain backward compatibility for scrips that assume all metadata values are strings.
@@ -754,6 +807,129 @@ public class MetaDataControllerTest extends AbstractIntegrationTest {
             .body("size()", is(5));
     }
 
+    @Test
+    public void rawSearchPaginated() {
+        List<String> entityIds = new ArrayList<>();
+        String continuationToken = null;
+        int pages = 0;
+        do {
+            RequestSpecification request = given()
+                .auth()
+                .preemptive()
+                .basic("sp-portal", "secret")
+                .when()
+                .header("Content-type", "application/json")
+                .queryParam("limit", 3)
+                .queryParam("sort", "data.entityid")
+                .queryParam("count", true);
+            if (continuationToken != null) {
+                request.queryParam("continuationToken", continuationToken);
+            }
+            Response response = request
+                .body("{\"data.state\": {$exists: true}}")
+                .post("manage/api/internal/rawSearch/saml20_sp");
+            response.then()
+                .statusCode(SC_OK)
+                .header("X-Total-Count", "7");
+            entityIds.addAll(response.jsonPath().getList("data.entityid"));
+            continuationToken = response.getHeader("X-Continuation-Token");
+            pages++;
+        } while (continuationToken != null);
+
+        assertEquals(3, pages);
+        assertEquals(7, entityIds.size());
+        assertEquals(entityIds.stream().sorted().toList(), entityIds);
+    }
+
+    @Test
+    public void searchPaginatedDescending() {
+        Response response = given()
+            .auth()
+            .preemptive()
+            .basic("sp-portal", "secret")
+            .when()
+            .header("Content-type", "application/json")
+            .queryParam("limit", 2)
+            .queryParam("sort", "-data.entityid")
+            .body(Map.of())
+            .post("manage/api/internal/search/saml20_sp");
+        response.then()
+            .statusCode(SC_OK)
+            .body("size()", is(2))
+            .body("data.entityid", contains("https://serviceregistry.test2.surfconext.nl/simplesaml/module.php/saml/sp/metadata.php/default-sp-2",
+                "https://serviceregistry.test2.surfconext.nl/simplesaml/module.php/saml/sp/metadata.php/default-sp"))
+            .header("X-Total-Count", nullValue());
+
+        given()
+            .auth()
+            .preemptive()
+            .basic("sp-portal", "secret")
+            .when()
+            .header("Content-type", "application/json")
+            .queryParam("limit", 10)
+            .queryParam("sort", "-data.entityid")
+            .queryParam("continuationToken", response.getHeader("X-Continuation-Token"))
+            .body(Map.of())
+            .post("manage/api/internal/search/saml20_sp")
+            .then()
+            .statusCode(SC_OK)
+            .body("size()", is(5))
+            .body("[0].data.entityid", equalTo("https://profile.test2.surfconext.nl/authentication/metadata"))
+            .header("X-Continuation-Token", nullValue());
+    }
+
+    @Test
+    public void searchPaginatedOmitsSortField() {
+        given()
+            .auth()
+            .preemptive()
+            .basic("sp-portal", "secret")
+            .when()
+            .header("Content-type", "application/json")
+            .queryParam("limit", 3)
+            .queryParam("sort", "data.metaDataFields.name:en")
+            .body(Map.of())
+            .post("manage/api/internal/search/saml20_sp")
+            .then()
+            .statusCode(SC_OK)
+            .body("size()", is(3))
+            .body("data.entityid", everyItem(notNullValue()))
+            .body("data.metaDataFields", everyItem(nullValue()))
+            .header("X-Continuation-Token", notNullValue());
+    }
+
+    @Test
+    public void searchWithoutPaginationReturnsAll() {
+        given()
+            .auth()
+            .preemptive()
+            .basic("sp-portal", "secret")
+            .when()
+            .header("Content-type", "application/json")
+            .queryParam("sort", "data.entityid")
+            .body(Map.of())
+            .post("manage/api/internal/search/saml20_sp")
+            .then()
+            .statusCode(SC_OK)
+            .body("size()", is(7))
+            .header("X-Continuation-Token", nullValue());
+    }
+
+    @Test
+    public void searchInvalidContinuationToken() {
+        given()
+            .auth()
+            .preemptive()
+            .basic("sp-portal", "secret")
+            .when()
+            .header("Content-type", "application/json")
+            .queryParam("continuationToken", "nope")
+            .body(Map.of())
+            .post("manage/api/internal/search/saml20_sp")
+            .then()
+            .statusCode(SC_BAD_REQUEST);
+    }
+
     private void doUpdate(EntityType type, String id, String revisionNote) {
         MetaData metaData = given()
             .when()
@@ -1188,6 +1364,30 @@ public class MetaDataControllerTest extends AbstractIntegrationTest {
         assertEquals(2, List.class.cast(result.get("merged")).size());
     }
 
+    @Test
+    public void deleteFeed() throws IOException {
+        String urlS = new ClassPathResource("xml/edugain_feed.xml").getURL().toString();
+        given()
+            .body(new Import(urlS, null))
+            .header("Content-type", "application/json")
+            .post("manage/api/client/import/feed")
+            .then()
+            .statusCode(SC_OK);
+        MongoTemplate mongoTemplate = metaDataRepository.getMongoTemplate();
+        Query autoCompleteQuery = Query.query(Criteria.where("type").is(EntityType.SP.getType()));
+        long autoCompleteEntries = mongoTemplate.count(autoCompleteQuery, AutoCompleteEntry.class);
+
+        Map<String, Number> result = given()
+            .delete("manage/api/client/delete/feed")
+            .as(new TypeRef<>() {
+            });
+
+        assertEquals(2, result.get("deleted").intValue());
+        assertEquals(autoCompleteEntries - 2, mongoTemplate.count(autoCompleteQuery, AutoCompleteEntry.class));
+        assertEquals(mongoTemplate.count(new Query(), EntityType.SP.getType()),
+            mongoTemplate.count(autoCompleteQuery, AutoCompleteEntry.class));
+    }
+
     @Test
     public void importFeedIdemPotency() throws IOException {
         String urlS = new ClassPathResource("import_xml/edugain_sniplet.xml").getURL().toString();
@@ -2309,6 +2509,24 @@ public class MetaDataControllerTest extends AbstractIntegrationTest {
         assertEquals(2L, stats.get(EntityType.IDP.getType()));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void internalStatsBreakdown() {
+        Map<String, Map<String, Object>> breakdown = given()
+            .auth()
+            .preemptive()
+            .basic("openconextaccess", "secret")
+            .when()
+            .get("manage/api/internal/stats/breakdown")
+            .as(new TypeRef<>() {
+            });
+        Map<String, Object> sp = breakdown.get(EntityType.SP.getType());
+        assertEquals(7, sp.get("total"));
+        Map<String, Integer> states = (Map<String, Integer>) sp.get("states");
+        assertEquals(7, states.values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(0, breakdown.get(EntityType.SP.getType()).get("importedFromEduGain"));
+    }
+
     @Test
     public void deleteConsequences() {
         List<MetaData> identityProviders = given()
@@ -0,0 +1,88 @@
+package manage.control;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.web.client.RestTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SuppressWarnings("unchecked")
+public class RestTemplateIdiomTest {
+
+    private static final Map<String, Object> PAYLOAD = Map.of("connections", Map.of("1", Map.of("name", "https://sp")));
+
+    private HttpServer server;
+    private String url;
+    private String contentEncoding;
+    private byte[] body;
+
+    @BeforeEach
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/push", exchange -> {
+            contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                body = "gzip".equals(contentEncoding) ?
+                    new GZIPInputStream(inputStream).readAllBytes() : inputStream.readAllBytes();
+            }
+            byte[] response = "OK".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/push";
+    }
+
+    @AfterEach
+    public void after() {
+        server.stop(0);
+    }
+
+    @Test
+    public void gzip() {
+        RestTemplate restTemplate = RestTemplateIdiom.buildRestTemplate(url, "user", "password",
+            HttpClientSettings.DEFAULT.withGzip(true));
+        restTemplate.postForEntity(url, PAYLOAD, String.class);
+
+        assertEquals("gzip", contentEncoding);
+        assertEquals(PAYLOAD, new JsonMapper().readValue(body, Map.class));
+    }
+
+    @Test
+    public void gzipStreaming() {
+        RestTemplate restTemplate = RestTemplateIdiom.buildStreamingRestTemplate(url, "user", "password",
+            HttpClientSettings.DEFAULT.withGzip(true));
+        byte[] json = new JsonMapper().writeValueAsBytes(PAYLOAD);
+        ResponseEntity<String> response = restTemplate.execute(url, HttpMethod.POST,
+            request -> ((StreamingHttpOutputMessage) request).setBody(outputStream -> outputStream.write(json)),
+            restTemplate.responseEntityExtractor(String.class));
+
+        assertEquals("OK", response.getBody());
+        assertEquals("gzip", contentEncoding);
+        assertEquals(PAYLOAD, new JsonMapper().readValue(body, Map.class));
+    }
+
+    @Test
+    public void noGzip() {
+        RestTemplate restTemplate = RestTemplateIdiom.buildRestTemplate(url, "user", "password");
+        restTemplate.postForEntity(url, PAYLOAD, String.class);
+
+        assertNull(contentEncoding);
+        assertEquals(PAYLOAD, new JsonMapper().readValue(body, Map.class));
+    }
+}
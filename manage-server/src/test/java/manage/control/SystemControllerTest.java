@@ -1,14 +1,17 @@
 package manage.control;
 
 import manage.AbstractIntegrationTest;
+import org.bson.Document;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Map;
 
 import static io.restassured.RestAssured.given;
 import static org.apache.http.HttpStatus.SC_OK;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SuppressWarnings("unchecked")
 public class SystemControllerTest extends AbstractIntegrationTest {
@@ -47,4 +50,45 @@ public class SystemControllerTest extends AbstractIntegrationTest {
                 .statusCode(SC_OK)
                 .body("size()", is(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void indexes() {
+        given()
+                .when()
+                .put("manage/api/client/playground/indexes")
+                .then()
+                .statusCode(SC_OK);
+        mongoTemplate().getCollection("saml20_sp").listIndexes().forEach(index -> {
+            if (index.get("key", Document.class).containsKey("data.state")) {
+                mongoTemplate().getCollection("saml20_sp").dropIndex(index.getString("name"));
+            }
+        });
+        List<Map<String, Object>> reports = given()
+                .when()
+                .get("manage/api/client/playground/indexes")
+                .then()
+                .statusCode(SC_OK)
+                .extract().as(List.class);
+        assertEquals(List.of("data.state_1"), report(reports, "saml20_sp").get("missing"));
+
+        reports = given()
+                .when()
+                .put("manage/api/client/playground/indexes")
+                .then()
+                .statusCode(SC_OK)
+                .extract().as(List.class);
+        assertEquals(List.of("data.state_1"), report(reports, "saml20_sp").get("created"));
+
+        reports = given()
+                .when()
+                .get("manage/api/client/playground/indexes")
+                .then()
+                .statusCode(SC_OK)
+                .extract().as(List.class);
+        assertTrue(reports.stream().allMatch(report -> ((List) report.get("missing")).isEmpty()));
+    }
+
+    private Map<String, Object> report(List<Map<String, Object>> reports, String collection) {
+        return reports.stream().filter(report -> report.get("collection").equals(collection)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,31 @@
+package manage.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConcatenatedListTest {
+
+    @Test
+    void concatenate() {
+        List<String> list = new ConcatenatedList<>(List.of("a", "b"), List.of("c"));
+
+        assertEquals(3, list.size());
+        assertEquals("c", list.get(2));
+        assertEquals(List.of("a", "b", "c"), list);
+        assertEquals(List.of("a", "b", "c"), new ArrayList<>(list));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(3));
+        assertThrows(UnsupportedOperationException.class, () -> list.add("d"));
+    }
+
+    @Test
+    void empty() {
+        List<String> list = new ConcatenatedList<>(List.of(), List.of("a"));
+
+        assertEquals(List.of("a"), list);
+    }
+}
@@ -0,0 +1,88 @@
+package manage.format;
+
+import manage.TestUtils;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tools.jackson.core.type.TypeReference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput and allocation rate of the EngineBlockFormatter with the LegacyEngineBlockFormatter. This is
+ * not a unit test and must be started manually, for example from the IDE with the main method. The allocation rate is
+ * reported by the GC profiler as gc.alloc.rate.norm in bytes per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBlockFormatterBenchmark implements TestUtils {
+
+    @Param({"1000"})
+    private int corpusSize;
+
+    private final EngineBlockFormatter formatter = new EngineBlockFormatter();
+    private final LegacyEngineBlockFormatter legacyFormatter = new LegacyEngineBlockFormatter();
+
+    private List<MetaData> corpus;
+
+    @Setup
+    public void setup() {
+        List<MetaData> seed = objectMapper.readValue(readFile("json/meta_data_seed.json"), new TypeReference<List<MetaData>>() {
+        }).stream()
+                .filter(metaData -> List.of(EntityType.SP.getType(), EntityType.IDP.getType(), EntityType.RP.getType())
+                        .contains(metaData.getType()))
+                .toList();
+        corpus = new ArrayList<>(corpusSize);
+        for (int i = 0; i < corpusSize; i++) {
+            corpus.add(seed.get(i % seed.size()));
+        }
+    }
+
+    @Benchmark
+    public void formatter(Blackhole blackhole) {
+        corpus.forEach(metaData -> blackhole.consume(parse(metaData)));
+    }
+
+    @Benchmark
+    public void legacyFormatter(Blackhole blackhole) {
+        corpus.forEach(metaData -> blackhole.consume(parseLegacy(metaData)));
+    }
+
+    private Object parse(MetaData metaData) {
+        EntityType entityType = EntityType.fromType(metaData.getType());
+        return switch (entityType) {
+            case IDP -> formatter.parseIdentityProvider(metaData);
+            case RP -> formatter.parseOidcClient(metaData);
+            default -> formatter.parseServiceProvider(metaData);
+        };
+    }
+
+    private Object parseLegacy(MetaData metaData) {
+        EntityType entityType = EntityType.fromType(metaData.getType());
+        return switch (entityType) {
+            case IDP -> legacyFormatter.parseIdentityProvider(metaData);
+            case RP -> legacyFormatter.parseOidcClient(metaData);
+            default -> legacyFormatter.parseServiceProvider(metaData);
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(EngineBlockFormatterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -1,12 +1,15 @@
 package manage.format;
 
 import manage.TestUtils;
+import manage.model.EntityType;
 import manage.model.MetaData;
 import org.junit.jupiter.api.Test;
+import tools.jackson.core.type.TypeReference;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
@@ -69,6 +72,33 @@ public class EngineBlockFormatterTest implements TestUtils {
         assertEquals(Stream.of("allow_all_entities", "metadata", "allowed_connections", "arp_attributes", "type").collect(Collectors.toSet()), rp.keySet());
     }
 
+    @Test
+    public void sameResultAsLegacyFormatter() {
+        LegacyEngineBlockFormatter legacyFormatter = new LegacyEngineBlockFormatter();
+        //Both formatters change the ARP of the source, so each formatter gets its own copy
+        List<MetaData> seed = seed();
+        List<MetaData> legacySeed = seed();
+        for (int i = 0; i < seed.size(); i++) {
+            MetaData metaData = seed.get(i);
+            MetaData legacyMetaData = legacySeed.get(i);
+            switch (EntityType.fromType(metaData.getType())) {
+                case IDP -> assertEquals(legacyFormatter.parseIdentityProvider(legacyMetaData),
+                        subject.parseIdentityProvider(metaData));
+                case SP -> assertEquals(legacyFormatter.parseServiceProvider(legacyMetaData),
+                        subject.parseServiceProvider(metaData));
+                case RP -> assertEquals(legacyFormatter.parseOidcClient(legacyMetaData),
+                        subject.parseOidcClient(metaData));
+                default -> {
+                }
+            }
+        }
+    }
+
+    private List<MetaData> seed() {
+        return objectMapper.readValue(readFile("json/meta_data_seed.json"), new TypeReference<List<MetaData>>() {
+        });
+    }
+
     private void assertAttribute(String path, String value, Map<String, Object> result) {
         String[] split = path.split(":");
         if (split.length == 1) {
@@ -0,0 +1,80 @@
+package manage.format;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the expansion of the allowed connections of IdPs that allow the SRAM RP by copying the SRAM services into
+ * every IdP list with sharing the SRAM services in a ConcatenatedList. The lists are also serialized, as that is
+ * where the shared list is iterated. Must be started manually with the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SramExpansionBenchmark {
+
+    @Param({"1000"})
+    private int identityProviders;
+
+    @Param({"5000"})
+    private int sramServices;
+
+    private final ObjectMapper objectMapper = new JsonMapper();
+
+    private List<List<Map<String, String>>> allowedEntities;
+    private List<Map<String, String>> sramAllowedEntities;
+
+    @Setup
+    public void setup() {
+        allowedEntities = IntStream.range(0, identityProviders)
+                .mapToObj(i -> List.of(Map.of("name", "https://sp-" + i), Map.of("name", "sbs.test.sram.surf.nl")))
+                .toList();
+        sramAllowedEntities = IntStream.range(0, sramServices)
+                .mapToObj(i -> Map.of("name", "https://sram-" + i))
+                .toList();
+    }
+
+    @Benchmark
+    public void copy(Blackhole blackhole) {
+        allowedEntities.forEach(allowed -> {
+            List<Map<String, String>> expandedAllowedEntities = new ArrayList<>(allowed);
+            expandedAllowedEntities.addAll(sramAllowedEntities);
+            objectMapper.writeValue(OutputStream.nullOutputStream(), expandedAllowedEntities);
+            blackhole.consume(expandedAllowedEntities);
+        });
+    }
+
+    @Benchmark
+    public void shared(Blackhole blackhole) {
+        allowedEntities.forEach(allowed -> {
+            List<Map<String, String>> expandedAllowedEntities = new ConcatenatedList<>(allowed, sramAllowedEntities);
+            objectMapper.writeValue(OutputStream.nullOutputStream(), expandedAllowedEntities);
+            blackhole.consume(expandedAllowedEntities);
+        });
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SramExpansionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
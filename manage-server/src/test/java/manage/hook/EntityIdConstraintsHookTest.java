@@ -0,0 +1,66 @@
+package manage.hook;
+
+import manage.AbstractIntegrationTest;
+import manage.api.APIUser;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SuppressWarnings("unchecked")
+class EntityIdConstraintsHookTest extends AbstractIntegrationTest {
+
+    private EntityIdConstraintsHook entityIdConstraintsHook;
+
+    private final APIUser apiUser = new APIUser("test", emptyList());
+
+    @BeforeEach
+    public void before() throws Exception {
+        super.before();
+        entityIdConstraintsHook = new EntityIdConstraintsHook(metaDataRepository);
+    }
+
+    @Test
+    void prePost() {
+        //Created without the MetaDataRepository, as if by another node
+        MetaData otherNode = new MetaData(EntityType.SP.getType(), new HashMap<>(Map.of("entityid", "https://other.node")));
+        otherNode.initial("other-node", "test", 999L);
+        mongoTemplate().insert(otherNode, EntityType.SP.getType());
+
+        MetaData metaData = new MetaData(EntityType.IDP.getType(), new HashMap<>(Map.of(
+            "entityid", "https://new.idp",
+            "allowedEntities", List.of(
+                Map.of("name", "http://mock-sp"),
+                Map.of("name", "https@//oidc.rp"),
+                Map.of("name", "https://sram.service.api.saml_sp"),
+                Map.of("name", "https://other.node"),
+                Map.of("name", "HTTPS://OTHER.NODE"),
+                Map.of("name", "HTTP://MOCK-SP"),
+                Map.of("name", "https://nope")),
+            "disableConsent", List.of(
+                Map.of("name", "http://mock-sp"),
+                Map.of("name", "http://mock-idp")),
+            "stepupEntities", List.of()
+        )));
+
+        MetaData result = entityIdConstraintsHook.prePost(metaData, apiUser);
+
+        assertEquals(List.of("http://mock-sp", "https@//oidc.rp", "https://sram.service.api.saml_sp", "https://other.node"),
+            names(result, "allowedEntities"));
+        assertEquals(List.of("http://mock-sp"), names(result, "disableConsent"));
+        assertEquals(List.of(), names(result, "stepupEntities"));
+    }
+
+    private List<String> names(MetaData metaData, String key) {
+        return ((List<Map<String, String>>) metaData.getData().get(key)).stream()
+            .map(reference -> reference.get("name"))
+            .toList();
+    }
+}
@@ -0,0 +1,52 @@
+package manage.hook;
+
+import manage.AbstractIntegrationTest;
+import manage.api.APIUser;
+import manage.exception.InvalidSearchException;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import org.everit.json.schema.ValidationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrganisationDeletionHookTest extends AbstractIntegrationTest {
+
+    private OrganisationDeletionHook organisationDeletionHook;
+
+    private final APIUser apiUser = new APIUser("test", emptyList());
+
+    @BeforeEach
+    public void before() throws Exception {
+        super.before();
+        organisationDeletionHook = new OrganisationDeletionHook(metaDataRepository, metaDataAutoConfiguration);
+    }
+
+    @Test
+    void preDelete() {
+        MetaData organisation = metaDataRepository.findById("18", EntityType.ORG.getType());
+        assertEquals(organisation, organisationDeletionHook.preDelete(organisation, apiUser));
+
+        MetaData rp = new MetaData(EntityType.RP.getType(), new HashMap<>(Map.of(
+            "entityid", "https://linked.rp", "organisationid", "18")));
+        rp.initial("linked-rp", "test", 999L);
+        mongoTemplate().insert(rp, EntityType.RP.getType());
+
+        assertThrows(ValidationException.class, () -> organisationDeletionHook.preDelete(organisation, apiUser));
+    }
+
+    @Test
+    void existsByField() {
+        assertTrue(metaDataRepository.existsByField(List.of(EntityType.ORG.getType()), "name", "Stichting Kennisnet"));
+        assertThrows(InvalidSearchException.class,
+            () -> metaDataRepository.existsByField(List.of(EntityType.ORG.getType()), "$where", "true"));
+    }
+}
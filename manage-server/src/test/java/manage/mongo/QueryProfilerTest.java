@@ -0,0 +1,49 @@
+package manage.mongo;
+
+import manage.AbstractIntegrationTest;
+import manage.model.EntityType;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("unchecked")
+public class QueryProfilerTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private QueryProfiler queryProfiler;
+
+    @Test
+    public void queries() {
+        metaDataRepository.whiteListing(EntityType.SP.getType(), "prodaccepted");
+
+        Map<String, Object> query = query("MetaDataRepository.whiteListing", EntityType.RP.getType()).orElseThrow();
+        assertEquals("find", query.get("command"));
+        assertTrue((Long) query.get("count") > 0);
+
+        await().until(() -> query("MetaDataRepository.whiteListing", EntityType.RP.getType()).map(q -> q.get("plan")).isPresent());
+        Map<String, Object> plan = (Map<String, Object>) query("MetaDataRepository.whiteListing", EntityType.RP.getType())
+            .orElseThrow().get("plan");
+        assertTrue(((String) plan.get("query")).contains("\"data.state\": \"?\""));
+    }
+
+    @Test
+    public void shape() {
+        BsonDocument shape = QueryProfiler.shape(BsonDocument.parse(
+            "{filter: {$and: [{'data.entityid': {$ne: 'mock'}}, {'data.state': {$in: ['prodaccepted']}}]}, limit: 10}"));
+        assertEquals(BsonDocument.parse(
+            "{filter: {$and: [{'data.entityid': {$ne: '?'}}, {'data.state': {$in: '?'}}]}, limit: '?'}"), shape);
+    }
+
+    private Optional<Map<String, Object>> query(String callSite, String collection) {
+        return queryProfiler.queries().stream()
+            .filter(query -> callSite.equals(query.get("callSite")) && collection.equals(query.get("collection")))
+            .findFirst();
+    }
+}
@@ -0,0 +1,72 @@
+package manage.repository;
+
+import manage.AbstractIntegrationTest;
+import manage.model.Activity;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import manage.model.Revision;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static manage.mongo.MongoChangelog.REVISION_POSTFIX;
+import static manage.repository.ActivityLog.MAX_RECENT_ACTIVITY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ActivityLogTest extends AbstractIntegrationTest {
+
+    private static final String SP = EntityType.SP.getType();
+
+    @Test
+    public void replaceActivityOfPreviousVersion() {
+        MetaData previous = metaDataRepository.findById("1", SP);
+        String revisionId = UUID.randomUUID().toString();
+        previous.revision(revisionId);
+        metaDataRepository.save(previous);
+
+        MetaData metaData = metaDataRepository.findById("1", SP);
+        metaData.promoteToLatest("test", "New version");
+        metaDataRepository.update(metaData);
+
+        List<MetaData> activities = metaDataRepository.recentActivity(List.of(EntityType.SP), 2);
+        assertEquals("1", activities.get(0).getId());
+        assertEquals("New version", activities.get(0).getData().get("revisionnote"));
+        assertEquals(SP, activities.get(0).getType());
+
+        Activity revision = mongoTemplate().findById(revisionId, Activity.class);
+        assertEquals(SP.concat(REVISION_POSTFIX), revision.getType());
+        assertEquals(SP, revision.getEntityType());
+        assertEquals("1", revision.getRevision().getParentId());
+    }
+
+    @Test
+    public void remove() {
+        MetaData metaData = metaDataRepository.findById("1", SP);
+        assertNotNull(mongoTemplate().findById("1", Activity.class));
+
+        metaDataRepository.remove(metaData);
+        assertNull(mongoTemplate().findById("1", Activity.class));
+    }
+
+    @Test
+    public void pruneBeyondRecentActivity() {
+        ActivityLog activityLog = metaDataRepository.getActivityLog();
+        Instant start = Instant.now().minusSeconds(3600);
+        for (int i = 0; i < MAX_RECENT_ACTIVITY + 5; i++) {
+            MetaData metaData = new MetaData("prune-" + i, 0L, SP,
+                new Revision(0, start.plusSeconds(i), null, "test"), Map.of("entityid", "https://prune/" + i));
+            activityLog.log(metaData);
+        }
+        long count = mongoTemplate().count(Query.query(Criteria.where("entityType").is(SP)), Activity.class);
+        assertEquals(MAX_RECENT_ACTIVITY, count);
+        assertNull(mongoTemplate().findById("prune-4", Activity.class));
+        assertNotNull(mongoTemplate().findById("prune-5", Activity.class));
+    }
+}
@@ -0,0 +1,31 @@
+package manage.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AutoCompleteIndexTest {
+
+    @Test
+    public void normalize() {
+        assertEquals("universite de geneve", AutoCompleteIndex.normalize("Universit\u00e9 de GEN\u00c8VE"));
+    }
+
+    @Test
+    public void suffixes() {
+        Set<String> suffixes = AutoCompleteIndex.suffixes(List.of("https://mock.nl"));
+        assertEquals(Set.of("https", "ttps", "tps", "ps", "s", "mock", "ock", "ck", "k", "nl", "l"), suffixes);
+    }
+
+    @Test
+    public void suffixesCapped() {
+        Set<String> suffixes = AutoCompleteIndex.suffixes(List.of("abcdefghijklmnopqrstuvwxyz"));
+        assertEquals(26, suffixes.size());
+        assertTrue(suffixes.contains("abcdefghijklmnop"));
+        assertTrue(suffixes.stream().allMatch(suffix -> suffix.length() <= AutoCompleteIndex.MAX_SUFFIX_LENGTH));
+    }
+}
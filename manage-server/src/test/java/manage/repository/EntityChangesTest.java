@@ -0,0 +1,54 @@
+package manage.repository;
+
+import manage.AbstractIntegrationTest;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SuppressWarnings("unchecked")
+public class EntityChangesTest extends AbstractIntegrationTest {
+
+    private static final String SP = EntityType.SP.getType();
+
+    @Test
+    public void updateWithoutRevision() {
+        Instant since = Instant.now();
+        assertFalse(metaDataRepository.hasChangesSince(SP, since));
+
+        //Like the validation of stored metadata, which does not promote a revision
+        MetaData metaData = metaDataRepository.findById("1", SP);
+        metaData.getData().put("notes", "Validated");
+        metaDataRepository.update(metaData);
+
+        assertTrue(metaDataRepository.hasChangesSince(SP, since));
+        List<MetaData> changed = metaDataRepository.changedSince(SP, since, "data.entityid");
+        assertEquals(1, changed.size());
+        assertEquals("1", changed.get(0).getId());
+        assertNull(changed.get(0).getData().get("notes"));
+        assertTrue(metaDataRepository.terminatedSince(SP, since).isEmpty());
+    }
+
+    @Test
+    public void deletesWithoutRevision() {
+        MetaData metaData = metaDataRepository.findById("1", SP);
+        ((Map<String, Object>) metaData.getData().get("metaDataFields")).put("coin:imported_from_edugain", true);
+        metaDataRepository.update(metaData);
+        Instant since = Instant.now();
+
+        assertEquals(1L, metaDataRepository.deleteAllImportedServiceProviders());
+        assertEquals(List.of("1"), metaDataRepository.terminatedSince(SP, since));
+        assertTrue(metaDataRepository.changedSince(SP, since, "data.entityid").isEmpty());
+
+        metaDataRepository.removeAll(EntityType.SFO.getType());
+        assertFalse(metaDataRepository.terminatedSince(EntityType.SFO.getType(), since).isEmpty());
+    }
+}
@@ -0,0 +1,58 @@
+package manage.repository;
+
+import manage.AbstractIntegrationTest;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EntityLookupTest extends AbstractIntegrationTest {
+
+    private static final String SP = EntityType.SP.getType();
+
+    @Test
+    public void findByEntityId() {
+        List<Map> ids = metaDataRepository.findByEntityId(SP, "HTTP://MOCK-SP");
+
+        assertEquals(1, ids.size());
+        assertEquals("3", ids.get(0).get("_id"));
+        assertFalse(metaDataRepository.entityIdExists(SP, "HTTP://MOCK-SP"));
+        assertTrue(metaDataRepository.entityIdExists(SP, "http://mock-sp"));
+        assertFalse(metaDataRepository.entityIdExists(SP, null));
+        assertTrue(metaDataRepository.institutionGuidExists(EntityType.IDP.getType(), "219092BE-B234-4C17-B910-B090C19CE3DB"));
+    }
+
+    @Test
+    public void existingEntityIds() {
+        Set<String> existing = metaDataRepository.existingEntityIds(
+            List.of(SP, EntityType.IDP.getType()),
+            List.of("http://mock-sp", "HTTP://MOCK-SP", "http://mock-idp", "https://nope"));
+
+        assertEquals(Set.of("http://mock-sp", "http://mock-idp"), existing);
+    }
+
+    @Test
+    public void changesOfOtherNodes() {
+        MetaData metaData = new MetaData(SP, new HashMap<>(Map.of("entityid", "https://other.node", "state", "testaccepted")));
+        metaData.initial("other-node", "test", 999L);
+        mongoTemplate().insert(metaData, SP);
+
+        assertTrue(metaDataRepository.entityIdExists(SP, "https://other.node"));
+        assertFalse(metaDataRepository.entityIdExists(SP, "HTTPS://OTHER.NODE"));
+        assertTrue(metaDataRepository.exists("other-node", SP));
+
+        mongoTemplate().remove(metaData, SP);
+        assertFalse(metaDataRepository.entityIdExists(SP, "https://other.node"));
+        assertTrue(metaDataRepository.findByEntityId(SP, "https://other.node").isEmpty());
+        assertTrue(metaDataRepository.existingEntityIds(List.of(SP), List.of("https://other.node")).isEmpty());
+        assertFalse(metaDataRepository.exists("other-node", SP));
+    }
+}
@@ -6,7 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class MetaDataRepositoryTest {
 
-    private MetaDataRepository subject = new MetaDataRepository(null, "en,nl,pt", null);
+    private MetaDataRepository subject = new MetaDataRepository(null, "en,nl,pt", null, null, null, null, null, 10000);
 
     @Test
     public void escapeSpecialChars() {
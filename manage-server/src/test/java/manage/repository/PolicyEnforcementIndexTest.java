@@ -0,0 +1,36 @@
+package manage.repository;
+
+import manage.AbstractIntegrationTest;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import manage.repository.PolicyEnforcementIndex.EnforcedProviders;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PolicyEnforcementIndexTest extends AbstractIntegrationTest {
+
+    @Test
+    void enforcedProviders() {
+        EnforcedProviders enforcedProviders = policyEnforcementIndex.enforcedProviders();
+        assertEquals(Set.of("https://1234aaab.nl", "https@//oidc.rp"), enforcedProviders.serviceProviderIds());
+        assertEquals(Set.of(), enforcedProviders.identityProviderIds());
+    }
+
+    @Test
+    void updateAndRemove() {
+        MetaData policy = metaDataRepository.findById("14", EntityType.PDP.getType());
+        policy.getData().put("active", false);
+        policyEnforcementIndex.update(policy);
+        assertEquals(Set.of("https://1234aaab.nl"), policyEnforcementIndex.enforcedProviders().serviceProviderIds());
+
+        policyEnforcementIndex.remove(metaDataRepository.findById("13", EntityType.PDP.getType()));
+        assertEquals(Set.of(), policyEnforcementIndex.enforcedProviders().serviceProviderIds());
+
+        policyEnforcementIndex.rebuild();
+        assertEquals(2, policyEnforcementIndex.enforcedProviders().serviceProviderIds().size());
+    }
+
+}
@@ -0,0 +1,100 @@
+package manage.service.push;
+
+import manage.model.PushOptions;
+import manage.model.PushRecord;
+import manage.service.jobs.ClusterLockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+class ClusterPushServiceTest {
+
+    private final ClusterLockService lockService = Mockito.mock(ClusterLockService.class);
+    private final MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+    private final ClusterPushService clusterPushService = new ClusterPushService(lockService, mongoTemplate, 5, 10);
+    private final AtomicInteger pushes = new AtomicInteger();
+
+    @BeforeEach
+    void before() {
+        when(lockService.getNodeId()).thenReturn("node-1");
+    }
+
+    @Test
+    void singleFlight() {
+        when(lockService.tryAcquire("push", 5)).thenReturn(true);
+
+        ResponseEntity<Map> response = clusterPushService.singleFlight(new PushOptions(true, true, false, false), this::push);
+
+        assertEquals(1, pushes.get());
+        assertEquals("node-1", response.getBody().get("node"));
+        assertEquals(false, response.getBody().get("joined"));
+        ArgumentCaptor<PushRecord> pushRecord = ArgumentCaptor.forClass(PushRecord.class);
+        verify(mongoTemplate).save(pushRecord.capture());
+        assertEquals(List.of("eb", "oidc"), pushRecord.getValue().getTargets());
+        verify(lockService).release("push");
+    }
+
+    @Test
+    void joinPushInProgress() {
+        when(lockService.tryAcquire("push", 5)).thenReturn(false);
+        when(mongoTemplate.findById(PushRecord.LAST_PUSH, PushRecord.class))
+            .thenReturn(null)
+            .thenReturn(new PushRecord(PushRecord.LAST_PUSH, Instant.now().plusSeconds(1), "node-2",
+                List.of("eb", "oidc", "pdp"), Map.of("eb", Map.of("status", "OK"))));
+
+        ResponseEntity<Map> response = clusterPushService.singleFlight(new PushOptions(true, true, false, false), this::push);
+
+        assertEquals(0, pushes.get());
+        assertEquals("node-2", response.getBody().get("node"));
+        assertEquals(true, response.getBody().get("joined"));
+        verify(lockService, never()).release("push");
+    }
+
+    @Test
+    void doNotJoinPushWithOtherTargets() {
+        when(lockService.tryAcquire(eq("push"), anyInt())).thenReturn(false).thenReturn(true);
+        when(mongoTemplate.findById(PushRecord.LAST_PUSH, PushRecord.class))
+            .thenReturn(new PushRecord(PushRecord.LAST_PUSH, Instant.now().plusSeconds(1), "node-2",
+                List.of("pdp"), Map.of("pdp", Map.of("status", "OK"))));
+
+        ResponseEntity<Map> response = clusterPushService.singleFlight(new PushOptions(true, false, false, false), this::push);
+
+        assertEquals(1, pushes.get());
+        assertEquals("node-1", response.getBody().get("node"));
+    }
+
+    @Test
+    void failedPushIsNotRecorded() {
+        when(lockService.tryAcquire("push", 5)).thenReturn(true);
+
+        ResponseEntity<Map> response = clusterPushService.singleFlight(new PushOptions(true, false, false, false),
+            pushOptions -> new ResponseEntity<>(Map.of("message", "error"), HttpStatus.INTERNAL_SERVER_ERROR));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        verify(mongoTemplate, never()).save(any(PushRecord.class));
+        verify(lockService).release("push");
+    }
+
+    private ResponseEntity<Map> push(PushOptions pushOptions) {
+        pushes.incrementAndGet();
+        return new ResponseEntity<>(Map.of("eb", Map.of("status", "OK")), HttpStatus.OK);
+    }
+}
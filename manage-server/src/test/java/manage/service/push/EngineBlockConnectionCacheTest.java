@@ -0,0 +1,89 @@
+package manage.service.push;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import manage.model.EntityType;
+import manage.model.MetaData;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SuppressWarnings("unchecked")
+class EngineBlockConnectionCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final EngineBlockConnectionCache cache = new EngineBlockConnectionCache(meterRegistry);
+
+    private final AtomicInteger formatted = new AtomicInteger();
+
+    private final Function<MetaData, Map<String, Object>> formatter = metaData -> {
+        formatted.incrementAndGet();
+        Map<String, Object> coin = new HashMap<>(Map.of("disable_scoping", true));
+        Map<String, Object> metadata = new HashMap<>(Map.of("coin", coin));
+        return new HashMap<>(Map.of("name", metaData.getData().get("entityid"), "metadata", metadata));
+    };
+
+    @Test
+    void connection() {
+        MetaData metaData = metaData("id", 1L);
+        cache.connection(metaData, formatter);
+        cache.connection(metaData, formatter);
+        assertEquals(1, formatted.get());
+        assertEquals(Map.of("size", 1, "hits", 1L, "misses", 1L), cache.stats());
+        assertEquals(1.0, meterRegistry.get("manage.push.cache.hits").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("manage.push.cache.misses").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("manage.push.cache.size").gauge().value());
+
+        metaData.setVersion(2L);
+        cache.connection(metaData, formatter);
+        assertEquals(2, formatted.get());
+    }
+
+    @Test
+    void connectionWithoutVersion() {
+        MetaData metaData = metaData("id", null);
+        cache.connection(metaData, formatter);
+        cache.connection(metaData, formatter);
+        assertEquals(2, formatted.get());
+        assertEquals(0, cache.stats().get("size"));
+    }
+
+    @Test
+    void connectionIsCopied() {
+        MetaData metaData = metaData("id", 1L);
+        Map<String, Object> connection = cache.connection(metaData, formatter);
+        Map<String, Object> metadata = (Map<String, Object>) connection.get("metadata");
+        ((Map<String, Object>) metadata.get("coin")).put("policy_enforcement_decision_required", true);
+        connection.put("allowed_connections", List.of());
+
+        Map<String, Object> cached = cache.connection(metaData, formatter);
+        assertFalse(cached.containsKey("allowed_connections"));
+        Map<String, Object> coin = (Map<String, Object>) ((Map<String, Object>) cached.get("metadata")).get("coin");
+        assertFalse(coin.containsKey("policy_enforcement_decision_required"));
+    }
+
+    @Test
+    void invalidateAndRetain() {
+        cache.connection(metaData("id1", 1L), formatter);
+        cache.connection(metaData("id2", 1L), formatter);
+        cache.connection(metaData("id3", 1L), formatter);
+
+        cache.invalidate("id1");
+        cache.retainAll(List.of("id2"));
+        assertEquals(1, cache.stats().get("size"));
+
+        cache.connection(metaData("id2", 1L), formatter);
+        assertEquals(3, formatted.get());
+    }
+
+    private MetaData metaData(String id, Long version) {
+        return new MetaData(id, version, EntityType.SP.getType(), null, new HashMap<>(Map.of("entityid", "https://" + id)));
+    }
+}
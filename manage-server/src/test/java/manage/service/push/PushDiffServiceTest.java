@@ -0,0 +1,89 @@
+package manage.service.push;
+
+import manage.AbstractIntegrationTest;
+import manage.model.PushedConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SuppressWarnings("unchecked")
+class PushDiffServiceTest extends AbstractIntegrationTest {
+
+    @Autowired
+    private PushDiffService pushDiffService;
+
+    @BeforeEach
+    void beforeEach() {
+        mongoTemplate().remove(new Query(), PushedConnection.class);
+        PushDiffService.Recorder recorder = pushDiffService.recorder();
+        recorder.accept("1", connection("https://sp", "Service"));
+        recorder.accept("2", connection("https://idp", "Identity"));
+        recorder.save();
+    }
+
+    @Test
+    void diff() {
+        PushDiffService.Diff diff = pushDiffService.diff();
+        diff.accept("1", connection("https://sp", "Changed service"));
+        diff.accept("3", connection("https://new", "New"));
+
+        Map<String, Object> result = diff.result();
+        assertEquals(Map.of("3", "https://new"), result.get("added"));
+        assertEquals(Set.of("2"), result.get("removed"));
+        assertEquals(0, result.get("unchanged"));
+
+        List<Map<String, Object>> changes = ((Map<String, List<Map<String, Object>>>) result.get("changed")).get("1");
+        assertEquals(1, changes.size());
+        assertEquals("metadata.name.en", changes.get(0).get("path"));
+    }
+
+    @Test
+    void unchanged() {
+        PushDiffService.Diff diff = pushDiffService.diff();
+        diff.accept("1", connection("https://sp", "Service"));
+        diff.accept("2", connection("https://idp", "Identity"));
+
+        Map<String, Object> result = diff.result();
+        assertEquals(2, result.get("unchanged"));
+        assertEquals(Set.of(), result.get("removed"));
+    }
+
+    @Test
+    void registerDelta() {
+        pushDiffService.registerDelta(Map.of("1", connection("https://sp", "Changed service")), Set.of("2"));
+
+        Map<String, Object> result = pushDiffService.diff().result();
+        assertEquals(Set.of("1"), result.get("removed"));
+        assertEquals(1L, mongoTemplate().count(new Query(), PushedConnection.class));
+    }
+
+    @Test
+    void recordInBatches() {
+        PushDiffService.Recorder recorder = pushDiffService.recorder();
+        IntStream.rangeClosed(1, 501).forEach(i ->
+            recorder.accept(String.valueOf(i), connection("https://sp" + i, "Service " + i)));
+        //Nothing is pushed before the push was successful
+        assertEquals(500L, mongoTemplate().count(new Query(), PushedConnection.PENDING_COLLECTION));
+        assertEquals(2L, mongoTemplate().count(new Query(), PushedConnection.class));
+
+        recorder.save();
+        assertEquals(0L, mongoTemplate().count(new Query(), PushedConnection.PENDING_COLLECTION));
+        assertEquals(501L, mongoTemplate().count(new Query(), PushedConnection.class));
+        assertEquals(501, ((Set<String>) pushDiffService.diff().result().get("removed")).size());
+    }
+
+    private Map<String, Object> connection(String name, String displayName) {
+        return Map.of(
+            "name", name,
+            "metadata", Map.of("name", Map.of("en", displayName))
+        );
+    }
+}
@@ -0,0 +1,154 @@
+package manage.service.push;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import manage.control.HttpClientSettings;
+import manage.control.RestTemplateIdiom;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PushResilienceServiceTest {
+
+    private WireMockServer server;
+    private String url;
+    private RestTemplate restTemplate;
+
+    @BeforeEach
+    void before() {
+        server = new WireMockServer(options().dynamicPort());
+        server.start();
+        url = "http://localhost:" + server.port() + "/push";
+        restTemplate = RestTemplateIdiom.buildRestTemplate(url, "user", "password",
+            new HttpClientSettings(false, 5, 5, 10, 1000, 1));
+    }
+
+    @AfterEach
+    void after() {
+        server.stop();
+    }
+
+    @Test
+    void retryUnavailable() {
+        server.stubFor(post(urlEqualTo("/push")).inScenario("retry")
+            .whenScenarioStateIs(Scenario.STARTED)
+            .willReturn(aResponse().withStatus(503))
+            .willSetStateTo("available"));
+        server.stubFor(post(urlEqualTo("/push")).inScenario("retry")
+            .whenScenarioStateIs("available")
+            .willReturn(aResponse().withStatus(200).withBody("OK")));
+        PushResilienceService pushResilienceService = new PushResilienceService(3, 10, 50, 5, 60);
+
+        ResponseEntity<String> response = pushResilienceService.execute("eb", this::push);
+
+        assertEquals("OK", response.getBody());
+        server.verify(2, postRequestedFor(urlEqualTo("/push")));
+        assertEquals(PushResilienceService.State.CLOSED, pushResilienceService.circuits().get("eb").get("state"));
+    }
+
+    @Test
+    void noRetryForReadTimeout() {
+        server.stubFor(post(urlEqualTo("/push"))
+            .willReturn(aResponse().withStatus(200).withFixedDelay(2000)));
+        PushResilienceService pushResilienceService = new PushResilienceService(2, 10, 50, 5, 60);
+
+        //The target may still be processing the push
+        assertThrows(ResourceAccessException.class, () -> pushResilienceService.execute("eb", this::push));
+
+        server.verify(1, postRequestedFor(urlEqualTo("/push")));
+        assertEquals(1, pushResilienceService.circuits().get("eb").get("consecutiveFailures"));
+    }
+
+    @Test
+    void retryConnectionRefused() {
+        server.stop();
+        PushResilienceService pushResilienceService = new PushResilienceService(3, 10, 50, 5, 60);
+
+        assertThrows(ResourceAccessException.class, () -> pushResilienceService.execute("eb", this::push));
+
+        assertEquals(3, pushResilienceService.circuits().get("eb").get("consecutiveFailures"));
+    }
+
+    @Test
+    void noRetryForGatewayTimeout() {
+        server.stubFor(post(urlEqualTo("/push"))
+            .willReturn(aResponse().withStatus(504)));
+        PushResilienceService pushResilienceService = new PushResilienceService(3, 10, 50, 5, 60);
+
+        assertThrows(HttpServerErrorException.class, () -> pushResilienceService.execute("eb", this::push));
+
+        server.verify(1, postRequestedFor(urlEqualTo("/push")));
+    }
+
+    @Test
+    void noRetryForClientError() {
+        server.stubFor(post(urlEqualTo("/push"))
+            .willReturn(aResponse().withStatus(400)));
+        PushResilienceService pushResilienceService = new PushResilienceService(3, 10, 50, 1, 60);
+
+        assertThrows(HttpClientErrorException.class, () -> pushResilienceService.execute("eb", this::push));
+
+        server.verify(1, postRequestedFor(urlEqualTo("/push")));
+        assertFalse(pushResilienceService.anyOpen());
+    }
+
+    @Test
+    void circuitOpens() {
+        server.stubFor(post(urlEqualTo("/push"))
+            .willReturn(aResponse().withStatus(500)));
+        PushResilienceService pushResilienceService = new PushResilienceService(3, 10, 50, 2, 60);
+
+        //A 500 is not retried
+        assertThrows(HttpServerErrorException.class, () -> pushResilienceService.execute("eb", this::push));
+        assertThrows(HttpServerErrorException.class, () -> pushResilienceService.execute("eb", this::push));
+        assertTrue(pushResilienceService.anyOpen());
+
+        PushTargetUnavailableException e = assertThrows(PushTargetUnavailableException.class,
+            () -> pushResilienceService.execute("eb", this::push));
+        assertTrue(e.getMessage().startsWith("Circuit of eb is open after 2 consecutive failures"));
+        server.verify(2, postRequestedFor(urlEqualTo("/push")));
+
+        //Other targets are not affected
+        assertEquals("pdp", pushResilienceService.execute("pdp", () -> "pdp"));
+    }
+
+    @Test
+    void circuitHalfOpen() {
+        server.stubFor(post(urlEqualTo("/push"))
+            .willReturn(aResponse().withStatus(503)));
+        PushResilienceService pushResilienceService = new PushResilienceService(1, 0, 0, 1, 0);
+
+        assertThrows(HttpServerErrorException.class, () -> pushResilienceService.execute("eb", this::push));
+        assertTrue(pushResilienceService.anyOpen());
+
+        server.stubFor(post(urlEqualTo("/push"))
+            .willReturn(aResponse().withStatus(200).withBody("OK")));
+        //The open period has passed, the trial call closes the circuit
+        assertEquals("OK", pushResilienceService.execute("eb", this::push).getBody());
+
+        Map<String, Object> circuit = pushResilienceService.circuits().get("eb");
+        assertEquals(PushResilienceService.State.CLOSED, circuit.get("state"));
+        assertEquals(0, circuit.get("consecutiveFailures"));
+    }
+
+    private ResponseEntity<String> push() {
+        return restTemplate.postForEntity(url, Map.of("connections", Map.of()), String.class);
+    }
+}
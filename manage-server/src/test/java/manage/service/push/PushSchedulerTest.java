@@ -0,0 +1,63 @@
+package manage.service.push;
+
+import manage.control.DatabaseController;
+import manage.model.PushOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PushSchedulerTest {
+
+    private final DatabaseController databaseController = Mockito.mock(DatabaseController.class);
+    private final PushScheduler pushScheduler = new PushScheduler(databaseController, 250);
+
+    @AfterEach
+    void after() {
+        pushScheduler.shutdown();
+    }
+
+    @Test
+    void schedule() {
+        when(databaseController.doPush(any(PushOptions.class))).thenReturn(new ResponseEntity<>(Map.of(), HttpStatus.OK));
+
+        CompletableFuture<ResponseEntity<Map>> pdpPush = pushScheduler.schedule(new PushOptions(false, false, true, false));
+        CompletableFuture<ResponseEntity<Map>> ebPush = pushScheduler.schedule(new PushOptions(true, true, false, false));
+        assertSame(pdpPush, ebPush);
+        assertEquals(HttpStatus.OK, ebPush.join().getStatusCode());
+
+        ArgumentCaptor<PushOptions> pushOptions = ArgumentCaptor.forClass(PushOptions.class);
+        verify(databaseController).doPush(pushOptions.capture());
+        PushOptions merged = pushOptions.getValue();
+        assertTrue(merged.isIncludeEB() && merged.isIncludeOIDC() && merged.isIncludePdP());
+        assertFalse(merged.isIncludeStepUp());
+
+        CompletableFuture<ResponseEntity<Map>> nextPush = pushScheduler.schedule(new PushOptions(false, false, true, false));
+        assertNotSame(ebPush, nextPush);
+        nextPush.join();
+        verify(databaseController, times(2)).doPush(any(PushOptions.class));
+    }
+
+    @Test
+    void scheduleFailure() {
+        when(databaseController.doPush(any(PushOptions.class))).thenThrow(new IllegalStateException("nope"));
+
+        CompletableFuture<ResponseEntity<Map>> push = pushScheduler.schedule(new PushOptions(true, false, false, false));
+        assertTrue(push.handle((response, e) -> e != null).join());
+    }
+}